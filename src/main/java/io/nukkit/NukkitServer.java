@@ -1,5 +1,7 @@
 package io.nukkit;
 
+import io.nukkit.item.crafting.CraftingManager;
+import io.nukkit.nbt.NBTCompression;
 import io.nukkit.util.ServerShutdownThread;
 import io.nukkit.util.logging.ConsoleHandler;
 import io.nukkit.util.logging.ConsoleWriter;
@@ -130,7 +132,7 @@ public class NukkitServer implements Server, Runnable {
     }
 
     public void stop() {
-
+        NBTCompression.releasePooled();
     }
 
     public boolean isRunning() {
@@ -392,12 +394,16 @@ public class NukkitServer implements Server, Runnable {
 
     @Override
     public void clearRecipes() {
-
+        CraftingManager.clearRecipes();
     }
 
     @Override
     public void resetRecipes() {
-
+        // Reloads off the main thread; recipes added meanwhile are replayed onto the new ones before they are swapped in
+        CraftingManager.resetRecipes().exceptionally(ex -> {
+            this.getLogger().log(Level.SEVERE, "Couldn't reset recipes", ex);
+            return null;
+        });
     }
 
     @Override
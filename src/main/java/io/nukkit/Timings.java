@@ -42,6 +42,11 @@ public class Timings {
     public static final CustomTimingsHandler entityActivationCheckTimer = new CustomTimingsHandler("entityActivationCheck");
     public static final CustomTimingsHandler checkIfActiveTimer = new CustomTimingsHandler("** checkIfActive");
 
+    // The share of lookups served by retesting the last match is 1 - (index count / lookup count)
+    public static final CustomTimingsHandler recipeLookupTimer = new CustomTimingsHandler("Recipe Lookup");
+    public static final CustomTimingsHandler recipeLastMatchTimer = new CustomTimingsHandler("** Recipe Lookup - Last Match", recipeLookupTimer);
+    public static final CustomTimingsHandler recipeIndexTimer = new CustomTimingsHandler("** Recipe Lookup - Index", recipeLookupTimer);
+
     public static final HashMap<String, CustomTimingsHandler> entityTypeTimingMap = new HashMap<String, CustomTimingsHandler>();
     public static final HashMap<String, CustomTimingsHandler> tileEntityTypeTimingMap = new HashMap<String, CustomTimingsHandler>();
     public static final HashMap<String, CustomTimingsHandler> pluginTaskTimingMap = new HashMap<String, CustomTimingsHandler>();
@@ -1,5 +1,6 @@
 package io.nukkit.item.crafting;
 
+import com.google.common.hash.HashCode;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
@@ -17,17 +18,26 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
 import javax.annotation.Nullable;
 
+import io.nukkit.Timings;
 import io.nukkit.item.ItemStack;
 import net.minecraft.inventory.InventoryCrafting;
 import net.minecraft.item.ItemStack;
 import net.minecraft.util.JsonUtils;
 import net.minecraft.util.NonNullList;
 import net.minecraft.util.ResourceLocation;
-import net.minecraft.util.registry.RegistryNamespaced;
 import net.minecraft.world.World;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
@@ -37,36 +47,199 @@ import org.apache.logging.log4j.Logger;
 public class CraftingManager
 {
     private static final Logger field_192422_a = LogManager.getLogger();
-    private static int field_193381_c;
-    public static final RegistryNamespaced<ResourceLocation, IRecipe> field_193380_a = new RegistryNamespaced<ResourceLocation, IRecipe>();
+    /**
+     * Shared by all recipe files; Gson instances are thread safe
+     */
+    private static final Gson GSON = (new GsonBuilder()).disableHtmlEscaping().create();
+    /**
+     * Binary copy of the recipes parsed from JSON, see RecipeCache
+     */
+    private static final Path RECIPE_CACHE = Paths.get("cache", "recipes.bin");
+    /**
+     * Recipes in use. The recipes of a published set are never changed; every change swaps in a new set. Only written
+     * while holding recipeLock
+     */
+    private static volatile RecipeSet recipes = new RecipeSet();
+    /**
+     * Held only to publish a new set, never while one is built, so the main thread is not kept waiting for long
+     */
+    private static final Object recipeLock = new Object();
+    /**
+     * Changes published while a reset is loading, which it replays onto the reloaded recipes. Null while no reset is
+     * pending. Guarded by recipeLock
+     */
+    private static List<UnaryOperator<RecipeSet>> journal;
+    private static int pendingResets;
 
     public static boolean func_193377_a()
     {
+        RecipeSet recipeset = loadRecipes();
+
+        if (recipeset == null)
+        {
+            return false;
+        }
+
+        publish(recipeset1 -> recipeset);
+        return true;
+    }
+
+    /**
+     * Loads the built-in recipes into a new set without publishing it, or returns null if loading failed
+     */
+    @Nullable
+    private static RecipeSet loadRecipes()
+    {
+        RecipeSet recipeset = new RecipeSet();
+
         try
         {
-            func_193379_a("armordye", new RecipesArmorDyes());
-            func_193379_a("bookcloning", new RecipeBookCloning());
-            func_193379_a("mapcloning", new RecipesMapCloning());
-            func_193379_a("mapextending", new RecipesMapExtending());
-            func_193379_a("fireworks", new RecipeFireworks());
-            func_193379_a("repairitem", new RecipeRepairItem());
-            func_193379_a("tippedarrow", new RecipeTippedArrow());
-            func_193379_a("bannerduplicate", new RecipesBanners.RecipeDuplicatePattern());
-            func_193379_a("banneraddpattern", new RecipesBanners.RecipeAddPattern());
-            func_193379_a("shielddecoration", new ShieldRecipes.Decoration());
-            func_193379_a("shulkerboxcoloring", new ShulkerBoxRecipes.ShulkerBoxColoring());
-            return func_192420_c();
+            recipeset.add(new ResourceLocation("armordye"), new RecipesArmorDyes());
+            recipeset.add(new ResourceLocation("bookcloning"), new RecipeBookCloning());
+            recipeset.add(new ResourceLocation("mapcloning"), new RecipesMapCloning());
+            recipeset.add(new ResourceLocation("mapextending"), new RecipesMapExtending());
+            recipeset.add(new ResourceLocation("fireworks"), new RecipeFireworks());
+            recipeset.add(new ResourceLocation("repairitem"), new RecipeRepairItem());
+            recipeset.add(new ResourceLocation("tippedarrow"), new RecipeTippedArrow());
+            recipeset.add(new ResourceLocation("bannerduplicate"), new RecipesBanners.RecipeDuplicatePattern());
+            recipeset.add(new ResourceLocation("banneraddpattern"), new RecipesBanners.RecipeAddPattern());
+            recipeset.add(new ResourceLocation("shielddecoration"), new ShieldRecipes.Decoration());
+            recipeset.add(new ResourceLocation("shulkerboxcoloring"), new ShulkerBoxRecipes.ShulkerBoxColoring());
+            return func_192420_c(recipeset) ? recipeset : null;
         }
-        catch (Throwable var1)
+        catch (Throwable var2)
         {
-            return false;
+            return null;
+        }
+    }
+
+    /**
+     * Reloads the built-in recipes on the common fork-join pool and swaps them in once loaded, dropping all recipes
+     * present when this was called. Changes made while loading, including other resets, are replayed onto the reloaded
+     * recipes before the swap, so none of them is lost. If loading or replaying fails, the future completes
+     * exceptionally and the current recipes stay in use
+     */
+    public static CompletableFuture<Void> resetRecipes()
+    {
+        final int i;
+
+        synchronized (recipeLock)
+        {
+            if (journal == null)
+            {
+                journal = new ArrayList<UnaryOperator<RecipeSet>>();
+            }
+
+            i = journal.size();
+            ++pendingResets;
+        }
+
+        return CompletableFuture.supplyAsync(CraftingManager::loadRecipes).thenAccept(recipeset ->
+        {
+            if (recipeset == null)
+            {
+                throw new IllegalStateException("Couldn't reload recipes");
+            }
+
+            RecipeSet recipeset1 = recipeset;
+            int j = i;
+
+            while (true)
+            {
+                List<UnaryOperator<RecipeSet>> list;
+
+                synchronized (recipeLock)
+                {
+                    if (journal.size() == j)
+                    {
+                        // Earlier resets still loading replay this one as a whole, after the changes it replayed
+                        final RecipeSet recipeset2 = recipeset1;
+                        recipes = recipeset2;
+                        journal.add(recipeset3 -> recipeset2);
+                        return;
+                    }
+
+                    list = new ArrayList<UnaryOperator<RecipeSet>>(journal.subList(j, journal.size()));
+                }
+
+                for (UnaryOperator<RecipeSet> change : list)
+                {
+                    recipeset1 = change.apply(recipeset1);
+                }
+
+                j += list.size();
+            }
+        }).whenComplete((ignored, throwable) ->
+        {
+            synchronized (recipeLock)
+            {
+                if (--pendingResets == 0)
+                {
+                    journal = null;
+                }
+            }
+        });
+    }
+
+    public static void clearRecipes()
+    {
+        publish(recipeset -> new RecipeSet());
+    }
+
+    /**
+     * Adds the recipes as one batch, in the iteration order of the map. The new set is built on the common fork-join
+     * pool and swapped in once complete, so lookups on the main thread are neither blocked nor see part of the batch.
+     * If the recipes change while it is built, it is built again on top of the change. Completes exceptionally without
+     * adding anything if one of the keys is already taken
+     */
+    public static CompletableFuture<Void> registerAll(Map<ResourceLocation, ? extends IRecipe> p_registerAll_0_)
+    {
+        final Map<ResourceLocation, IRecipe> map = new LinkedHashMap<ResourceLocation, IRecipe>(p_registerAll_0_);
+        return CompletableFuture.runAsync(() -> publish(recipeset ->
+        {
+            RecipeSet recipeset1 = new RecipeSet(recipeset);
+            recipeset1.addAll(map);
+            return recipeset1;
+        }));
+    }
+
+    /**
+     * Applies the change to the current recipes and swaps in the result, applying it again if another change was
+     * published meanwhile. The change is recorded for pending resets to replay, so it must not depend on anything but
+     * the set it is given
+     */
+    private static void publish(UnaryOperator<RecipeSet> change)
+    {
+        while (true)
+        {
+            RecipeSet recipeset = recipes;
+            RecipeSet recipeset1 = change.apply(recipeset);
+
+            synchronized (recipeLock)
+            {
+                if (recipes == recipeset)
+                {
+                    recipes = recipeset1;
+
+                    if (journal != null)
+                    {
+                        journal.add(change);
+                    }
+
+                    return;
+                }
+            }
         }
     }
 
-    private static boolean func_192420_c()
+    /**
+     * Loads the recipe files in three phases: listing them, parsing them in parallel on the common fork-join pool, and
+     * registering them on this thread sorted by name, so that IDs do not depend on the order of the file system. The
+     * parsed recipes are written to a RecipeCache, which replaces parsing on later starts while the files are unchanged.
+     */
+    private static boolean func_192420_c(RecipeSet recipeset)
     {
         FileSystem filesystem = null;
-        Gson gson = (new GsonBuilder()).setPrettyPrinting().disableHtmlEscaping().create();
         boolean flag1;
 
         try
@@ -75,6 +248,7 @@ public class CraftingManager
 
             if (url != null)
             {
+                long start = System.nanoTime();
                 URI uri = url.toURI();
                 Path path;
 
@@ -95,6 +269,9 @@ public class CraftingManager
                     path = filesystem.getPath("/assets/minecraft/recipes");
                 }
 
+                final List<Path> list = new ArrayList<Path>();
+                final List<ResourceLocation> list1 = new ArrayList<ResourceLocation>();
+                final Map<ResourceLocation, Path> map = new TreeMap<ResourceLocation, Path>();
                 Iterator<Path> iterator = Files.walk(path).iterator();
 
                 while (iterator.hasNext())
@@ -104,37 +281,64 @@ public class CraftingManager
                     if ("json".equals(FilenameUtils.getExtension(path1.toString())))
                     {
                         Path path2 = path.relativize(path1);
-                        String s = FilenameUtils.removeExtension(path2.toString()).replaceAll("\\\\", "/");
-                        ResourceLocation resourcelocation = new ResourceLocation(s);
-                        BufferedReader bufferedreader = null;
+                        map.put(new ResourceLocation(FilenameUtils.removeExtension(path2.toString()).replaceAll("\\\\", "/")), path1);
+                    }
+                }
+
+                list.addAll(map.values());
+                list1.addAll(map.keySet());
+                HashCode hashcode = RecipeCache.key(map);
+                long listed = System.nanoTime();
+                List<IRecipe> list2 = RecipeCache.read(RECIPE_CACHE, hashcode, list.size());
+                boolean flag = list2 != null;
 
+                if (!flag)
+                {
+                    final IRecipe[] airecipe = new IRecipe[list.size()];
+                    final Throwable[] athrowable = new Throwable[list.size()];
+                    IntStream.range(0, list.size()).parallel().forEach(index ->
+                    {
                         try
                         {
-                            boolean flag;
-
-                            try
-                            {
-                                bufferedreader = Files.newBufferedReader(path1);
-                                func_193379_a(s, func_193376_a((JsonObject)JsonUtils.func_193839_a(gson, bufferedreader, JsonObject.class)));
-                            }
-                            catch (JsonParseException jsonparseexception)
-                            {
-                                field_192422_a.error("Parsing error loading recipe " + resourcelocation, jsonparseexception);
-                                flag = false;
-                                return flag;
-                            }
-                            catch (IOException ioexception)
-                            {
-                                field_192422_a.error("Couldn't read recipe " + resourcelocation + " from " + path1, ioexception);
-                                flag = false;
-                                return flag;
-                            }
+                            airecipe[index] = parseRecipeFile(list.get(index));
+                        }
+                        catch (JsonParseException | IOException exception)
+                        {
+                            athrowable[index] = exception;
+                        }
+                    });
+
+                    for (int l = 0; l < list.size(); ++l)
+                    {
+                        if (athrowable[l] instanceof IOException)
+                        {
+                            field_192422_a.error("Couldn't read recipe " + list1.get(l) + " from " + list.get(l), athrowable[l]);
+                            return false;
                         }
-                        finally
+
+                        if (athrowable[l] != null)
                         {
-                            IOUtils.closeQuietly(bufferedreader);
+                            field_192422_a.error("Parsing error loading recipe " + list1.get(l), athrowable[l]);
+                            return false;
                         }
                     }
+
+                    list2 = Arrays.asList(airecipe);
+                }
+
+                long parsed = System.nanoTime();
+
+                for (int i1 = 0; i1 < list2.size(); ++i1)
+                {
+                    recipeset.add(list1.get(i1), list2.get(i1));
+                }
+
+                long registered = System.nanoTime();
+                field_192422_a.info("Loaded {} recipe files (listing {} ms, {} {} ms, registering {} ms)", list.size(), (listed - start) / 1000000L, flag ? "reading cache" : "parsing", (parsed - listed) / 1000000L, (registered - parsed) / 1000000L);
+
+                if (!flag)
+                {
+                    RecipeCache.write(RECIPE_CACHE, hashcode, list2);
                 }
 
                 return true;
@@ -157,6 +361,21 @@ public class CraftingManager
         return flag1;
     }
 
+    private static IRecipe parseRecipeFile(Path path) throws IOException
+    {
+        BufferedReader bufferedreader = null;
+
+        try
+        {
+            bufferedreader = Files.newBufferedReader(path);
+            return func_193376_a((JsonObject)JsonUtils.func_193839_a(GSON, bufferedreader, JsonObject.class));
+        }
+        finally
+        {
+            IOUtils.closeQuietly(bufferedreader);
+        }
+    }
+
     private static IRecipe func_193376_a(JsonObject p_193376_0_)
     {
         String s = JsonUtils.getString(p_193376_0_, "type");
@@ -180,16 +399,18 @@ public class CraftingManager
         func_193372_a(new ResourceLocation(p_193379_0_), p_193379_1_);
     }
 
+    /**
+     * Adds a single recipe by swapping in a copy of the current set, which takes time proportional to the number of
+     * recipes; registerAll adds many at once
+     */
     public static void func_193372_a(ResourceLocation p_193372_0_, IRecipe p_193372_1_)
     {
-        if (field_193380_a.containsKey(p_193372_0_))
+        publish(recipeset ->
         {
-            throw new IllegalStateException("Duplicate recipe ignored with ID " + p_193372_0_);
-        }
-        else
-        {
-            field_193380_a.register(field_193381_c++, p_193372_0_, p_193372_1_);
-        }
+            RecipeSet recipeset1 = new RecipeSet(recipeset);
+            recipeset1.add(p_193372_0_, p_193372_1_);
+            return recipeset1;
+        });
     }
 
     /**
@@ -197,46 +418,81 @@ public class CraftingManager
      */
     public static ItemStack findMatchingRecipe(InventoryCrafting p_82787_0_, World craftMatrix)
     {
-        for (IRecipe irecipe : field_193380_a)
-        {
-            if (irecipe.matches(p_82787_0_, craftMatrix))
-            {
-                return irecipe.getCraftingResult(p_82787_0_);
-            }
-        }
-
-        return ItemStack.field_190927_a;
+        IRecipe irecipe = func_192413_b(p_82787_0_, craftMatrix);
+        return irecipe != null ? irecipe.getCraftingResult(p_82787_0_) : ItemStack.field_190927_a;
     }
 
     @Nullable
     public static IRecipe func_192413_b(InventoryCrafting p_192413_0_, World p_192413_1_)
     {
-        for (IRecipe irecipe : field_193380_a)
+        Timings.recipeLookupTimer.startTiming();
+
+        try
         {
-            if (irecipe.matches(p_192413_0_, p_192413_1_))
+            RecipeSet recipeset = recipes;
+            IRecipe irecipe = recipeset.lastMatches.get(p_192413_0_);
+
+            if (irecipe != null)
             {
-                return irecipe;
+                Timings.recipeLastMatchTimer.startTiming();
+                boolean flag = irecipe.matches(p_192413_0_, p_192413_1_);
+                Timings.recipeLastMatchTimer.stopTiming();
+
+                if (flag)
+                {
+                    return irecipe;
+                }
+            }
+
+            Timings.recipeIndexTimer.startTiming();
+            irecipe = recipeset.index.findMatchingRecipe(p_192413_0_, p_192413_1_);
+            Timings.recipeIndexTimer.stopTiming();
+
+            if (irecipe != null)
+            {
+                recipeset.lastMatches.put(p_192413_0_, irecipe);
+            }
+            else
+            {
+                recipeset.lastMatches.remove(p_192413_0_);
             }
-        }
 
-        return null;
+            return irecipe;
+        }
+        finally
+        {
+            Timings.recipeLookupTimer.stopTiming();
+        }
     }
 
     public static NonNullList<ItemStack> getRemainingItems(InventoryCrafting p_180303_0_, World craftMatrix)
     {
-        for (IRecipe irecipe : field_193380_a)
+        IRecipe irecipe = func_192413_b(p_180303_0_, craftMatrix);
+        return irecipe != null ? irecipe.getRemainingItems(p_180303_0_) : copyGrid(p_180303_0_);
+    }
+
+    /**
+     * Looks up the recipe once and gets both its result and its remaining items, instead of one lookup for each
+     */
+    public static RecipeMatch matchRecipe(InventoryCrafting craftMatrix, World world)
+    {
+        IRecipe irecipe = func_192413_b(craftMatrix, world);
+
+        if (irecipe == null)
         {
-            if (irecipe.matches(p_180303_0_, craftMatrix))
-            {
-                return irecipe.getRemainingItems(p_180303_0_);
-            }
+            return new RecipeMatch(null, ItemStack.field_190927_a, copyGrid(craftMatrix));
         }
 
-        NonNullList<ItemStack> nonnulllist = NonNullList.<ItemStack>func_191197_a(p_180303_0_.getSizeInventory(), ItemStack.field_190927_a);
+        return new RecipeMatch(irecipe, irecipe.getCraftingResult(craftMatrix), irecipe.getRemainingItems(craftMatrix));
+    }
+
+    private static NonNullList<ItemStack> copyGrid(InventoryCrafting craftMatrix)
+    {
+        NonNullList<ItemStack> nonnulllist = NonNullList.<ItemStack>func_191197_a(craftMatrix.getSizeInventory(), ItemStack.field_190927_a);
 
         for (int i = 0; i < nonnulllist.size(); ++i)
         {
-            nonnulllist.set(i, p_180303_0_.getStackInSlot(i));
+            nonnulllist.set(i, craftMatrix.getStackInSlot(i));
         }
 
         return nonnulllist;
@@ -245,17 +501,17 @@ public class CraftingManager
     @Nullable
     public static IRecipe func_193373_a(ResourceLocation p_193373_0_)
     {
-        return field_193380_a.getObject(p_193373_0_);
+        return recipes.getRecipe(p_193373_0_);
     }
 
     public static int func_193375_a(IRecipe p_193375_0_)
     {
-        return field_193380_a.getIDForObject(p_193375_0_);
+        return recipes.getId(p_193375_0_);
     }
 
     @Nullable
     public static IRecipe func_193374_a(int p_193374_0_)
     {
-        return field_193380_a.getObjectById(p_193374_0_);
+        return recipes.getRecipe(p_193374_0_);
     }
 }
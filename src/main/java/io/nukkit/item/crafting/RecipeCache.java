@@ -0,0 +1,275 @@
+package io.nukkit.item.crafting;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.nukkit.util.Binary;
+import io.nukkit.util.BinaryStream;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.NonNullList;
+import net.minecraft.util.ResourceLocation;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary copy of the recipes loaded from JSON, so that later starts can skip parsing them. The file starts with a key
+ * hashed from the name, size and modification time of every recipe file; a cache whose key differs is stale and the
+ * recipes are parsed again. Items are stored by name in a table at the start of the file, so the cache does not depend
+ * on item IDs.
+ * <p>
+ * Only plain {@link ShapedRecipes} and {@link ShapelessRecipes} whose stacks carry no NBT can be stored. If any recipe
+ * is of another kind nothing is written and the recipes are always parsed.
+ */
+class RecipeCache {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MAGIC = 0x4E4B5243;
+    private static final int VERSION = 1;
+    private static final int SHAPED = 0;
+    private static final int SHAPELESS = 1;
+
+    /**
+     * Hashes the recipe files, which must be given in the order they are registered in.
+     */
+    static HashCode key(Map<ResourceLocation, Path> files) throws IOException {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putInt(VERSION);
+
+        for (Map.Entry<ResourceLocation, Path> entry : files.entrySet()) {
+            hasher.putString(entry.getKey().toString(), StandardCharsets.UTF_8);
+            hasher.putLong(Files.size(entry.getValue()));
+            hasher.putLong(Files.getLastModifiedTime(entry.getValue()).toMillis());
+        }
+
+        return hasher.hash();
+    }
+
+    /**
+     * Reads the recipes from the cache, or returns null if it is missing, stale or damaged.
+     */
+    @Nullable
+    static List<IRecipe> read(Path file, HashCode key, int count) {
+        MappedByteBuffer buf;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOGGER.warn("Couldn't read recipe cache " + file, e);
+            return null;
+        }
+
+        try {
+            byte[] hash = new byte[key.bits() / 8];
+
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                return null;
+            }
+
+            buf.get(hash);
+
+            if (!Arrays.equals(hash, key.asBytes())) {
+                LOGGER.info("Recipe cache is out of date");
+                return null;
+            }
+
+            Item[] items = new Item[readLength(buf)];
+
+            for (int i = 0; i < items.length; ++i) {
+                String name = readString(buf);
+                items[i] = Item.REGISTRY.getObject(new ResourceLocation(name));
+
+                if (items[i] == null) {
+                    LOGGER.info("Recipe cache refers to unknown item {}", name);
+                    return null;
+                }
+            }
+
+            if (Binary.readUnsignedVarInt(buf) != count) {
+                return null;
+            }
+
+            List<IRecipe> list = new ArrayList<>(count);
+
+            for (int i = 0; i < count; ++i) {
+                list.add(readRecipe(buf, items));
+            }
+
+            return list;
+        } catch (RuntimeException e) {
+            LOGGER.warn("Recipe cache " + file + " is damaged", e);
+            return null;
+        }
+    }
+
+    private static IRecipe readRecipe(ByteBuffer buf, Item[] items) {
+        int type = buf.get();
+        String group = readString(buf);
+
+        if (type == SHAPED) {
+            int width = Binary.readUnsignedVarInt(buf);
+            int height = Binary.readUnsignedVarInt(buf);
+            return new ShapedRecipes(group, width, height, readIngredients(buf, items), readStack(buf, items));
+        } else if (type == SHAPELESS) {
+            NonNullList<Ingredient> ingredients = readIngredients(buf, items);
+            return new ShapelessRecipes(group, readStack(buf, items), ingredients);
+        }
+
+        throw new IllegalArgumentException("Unknown recipe type " + type);
+    }
+
+    private static NonNullList<Ingredient> readIngredients(ByteBuffer buf, Item[] items) {
+        NonNullList<Ingredient> list = NonNullList.func_191197_a(readLength(buf), Ingredient.field_193370_a);
+
+        for (int i = 0; i < list.size(); ++i) {
+            ItemStack[] aitemstack = new ItemStack[readLength(buf)];
+
+            for (int j = 0; j < aitemstack.length; ++j) {
+                aitemstack[j] = readStack(buf, items);
+            }
+
+            list.set(i, Ingredient.func_193369_a(aitemstack));
+        }
+
+        return list;
+    }
+
+    private static ItemStack readStack(ByteBuffer buf, Item[] items) {
+        Item item = items[Binary.readUnsignedVarInt(buf)];
+        int count = Binary.readUnsignedVarInt(buf);
+        return new ItemStack(item, count, Binary.readUnsignedVarInt(buf));
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[readLength(buf)];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the length of something that follows. Every element takes at least one byte, so a length above the bytes
+     * left can only come from a damaged file and is rejected before anything is allocated for it.
+     */
+    private static int readLength(ByteBuffer buf) {
+        int length = Binary.readUnsignedVarInt(buf);
+
+        if (length < 0 || length > buf.remaining()) {
+            throw new IllegalArgumentException("Length " + length + " exceeds the " + buf.remaining() + " bytes left");
+        }
+
+        return length;
+    }
+
+    /**
+     * Writes the recipes to the cache, replacing it. Does nothing if one of them cannot be stored.
+     */
+    static void write(Path file, HashCode key, List<IRecipe> recipes) {
+        Map<Item, Integer> items = new HashMap<>();
+        BinaryStream table = new BinaryStream();
+        BinaryStream body = new BinaryStream();
+        body.putUnsignedVarInt(recipes.size());
+
+        for (IRecipe recipe : recipes) {
+            if (!writeRecipe(body, recipe, items, table)) {
+                LOGGER.debug("Not caching recipes, {} cannot be stored", recipe);
+                return;
+            }
+        }
+
+        BinaryStream stream = new BinaryStream();
+        stream.putInt(MAGIC);
+        stream.putInt(VERSION);
+        stream.put(key.asBytes());
+        stream.putUnsignedVarInt(items.size());
+        stream.put(table.getRawBuffer(), 0, table.getCount());
+        stream.put(body.getRawBuffer(), 0, body.getCount());
+
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, stream.getBuffer());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Couldn't write recipe cache " + file, e);
+        }
+    }
+
+    private static boolean writeRecipe(BinaryStream stream, IRecipe recipe, Map<Item, Integer> items, BinaryStream table) {
+        if (recipe.getClass() == ShapedRecipes.class) {
+            ShapedRecipes shapedrecipes = (ShapedRecipes) recipe;
+            stream.putByte((byte) SHAPED);
+            stream.putString(shapedrecipes.func_193358_e());
+            stream.putUnsignedVarInt(shapedrecipes.func_192403_f());
+            stream.putUnsignedVarInt(shapedrecipes.func_192404_g());
+        } else if (recipe.getClass() == ShapelessRecipes.class) {
+            stream.putByte((byte) SHAPELESS);
+            stream.putString(recipe.func_193358_e());
+        } else {
+            return false;
+        }
+
+        List<Ingredient> ingredients = recipe.func_192400_c();
+        stream.putUnsignedVarInt(ingredients.size());
+
+        for (Ingredient ingredient : ingredients) {
+            if (ingredient.getClass() != Ingredient.class && ingredient != Ingredient.field_193370_a) {
+                return false;
+            }
+
+            ItemStack[] aitemstack = ingredient.func_193365_a();
+            stream.putUnsignedVarInt(aitemstack.length);
+
+            for (ItemStack itemstack : aitemstack) {
+                if (!writeStack(stream, itemstack, items, table)) {
+                    return false;
+                }
+            }
+        }
+
+        return writeStack(stream, recipe.getRecipeOutput(), items, table);
+    }
+
+    private static boolean writeStack(BinaryStream stream, ItemStack itemstack, Map<Item, Integer> items, BinaryStream table) {
+        if (itemstack.hasTagCompound()) {
+            return false;
+        }
+
+        Item item = itemstack.getItem();
+        Integer index = items.get(item);
+
+        if (index == null) {
+            ResourceLocation name = Item.REGISTRY.getNameForObject(item);
+
+            if (name == null) {
+                return false;
+            }
+
+            index = items.size();
+            items.put(item, index);
+            table.putString(name.toString());
+        }
+
+        stream.putUnsignedVarInt(index);
+        stream.putUnsignedVarInt(itemstack.func_190916_E());
+        stream.putUnsignedVarInt(itemstack.getMetadata());
+        return true;
+    }
+}
@@ -0,0 +1,204 @@
+package io.nukkit.item.crafting;
+
+import net.minecraft.inventory.InventoryCrafting;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.world.World;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Narrows down the recipes tested against a crafting grid. Shaped recipes are filed under the size of their pattern
+ * without empty rows and columns, shapeless ones under their number of ingredients, and both under every item id one of
+ * their ingredients accepts. The smallest item id in a matching grid is accepted by some ingredient of the recipe, so a
+ * grid only has to test the recipes filed under its trimmed size or item count together with that id. Recipes of any
+ * other kind, and recipes without ingredients, are tested for every grid.
+ * <p>
+ * Candidates are tested in registration order, so the recipe found is the same one a scan over all recipes finds.
+ */
+public class RecipeIndex {
+    private static final int SHAPELESS = 1 << 24;
+    private final Map<Integer, List<Entry>> buckets = new HashMap<>();
+    private final List<Entry> dynamic = new ArrayList<>();
+    private int size;
+
+    /**
+     * Adds a recipe, which is tested after all recipes added before it.
+     */
+    public void add(IRecipe recipe) {
+        Entry entry = new Entry(recipe, this.size++);
+        List<Ingredient> ingredients;
+        int width;
+
+        if (recipe.getClass() == ShapedRecipes.class) {
+            ingredients = recipe.func_192400_c();
+            width = ((ShapedRecipes) recipe).func_192403_f();
+        } else if (recipe.getClass() == ShapelessRecipes.class) {
+            ingredients = recipe.func_192400_c();
+            width = 0;
+        } else {
+            this.dynamic.add(entry);
+            return;
+        }
+
+        List<Integer> ids = new ArrayList<>();
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = -1;
+        int maxY = -1;
+
+        for (int i = 0; i < ingredients.size(); ++i) {
+            Ingredient ingredient = ingredients.get(i);
+
+            if (ingredient == Ingredient.field_193370_a) {
+                continue;
+            }
+
+            if (ingredient.getClass() != Ingredient.class) {
+                this.dynamic.add(entry);
+                return;
+            }
+
+            if (width > 0) {
+                minX = Math.min(minX, i % width);
+                minY = Math.min(minY, i / width);
+                maxX = Math.max(maxX, i % width);
+                maxY = Math.max(maxY, i / width);
+            }
+
+            for (ItemStack itemstack : ingredient.func_193365_a()) {
+                Integer id = Item.getIdFromItem(itemstack.getItem());
+
+                if (!ids.contains(id)) {
+                    ids.add(id);
+                }
+            }
+        }
+
+        if (ids.isEmpty()) {
+            // Only matches an empty grid, which is never looked up in the buckets
+            this.dynamic.add(entry);
+            return;
+        }
+
+        // Patterns of recipes not loaded from JSON may keep empty rows and columns, so file them under the bounding box
+        // of their ingredients, as the grid is trimmed the same way
+        int shape = width > 0 ? shape(maxX - minX + 1, maxY - minY + 1) : SHAPELESS | ingredients.size() << 16;
+
+        for (int id : ids) {
+            this.buckets.computeIfAbsent(shape | id & 0xFFFF, k -> new ArrayList<>(2)).add(entry);
+        }
+    }
+
+    public void clear() {
+        this.buckets.clear();
+        this.dynamic.clear();
+        this.size = 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Gets the first recipe, in registration order, that matches the grid.
+     */
+    @Nullable
+    public IRecipe findMatchingRecipe(InventoryCrafting craftMatrix, World world) {
+        int width = craftMatrix.func_174922_i();
+        int height = craftMatrix.func_174923_h();
+        int minX = width;
+        int minY = height;
+        int maxX = -1;
+        int maxY = -1;
+        int count = 0;
+        int minId = Integer.MAX_VALUE;
+
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                ItemStack itemstack = craftMatrix.getStackInSlot(x + y * width);
+
+                if (!itemstack.func_190926_b()) {
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x);
+                    maxY = Math.max(maxY, y);
+                    ++count;
+                    minId = Math.min(minId, Item.getIdFromItem(itemstack.getItem()));
+                }
+            }
+        }
+
+        List<Entry> shaped = Collections.emptyList();
+        List<Entry> shapeless = Collections.emptyList();
+
+        if (count > 0) {
+            shaped = this.bucket(shape(maxX - minX + 1, maxY - minY + 1) | minId & 0xFFFF);
+            shapeless = this.bucket(SHAPELESS | count << 16 | minId & 0xFFFF);
+        }
+
+        int i = 0;
+        int j = 0;
+        int k = 0;
+
+        while (true) {
+            Entry entry = null;
+            int source = -1;
+
+            if (i < shaped.size()) {
+                entry = shaped.get(i);
+                source = 0;
+            }
+
+            if (j < shapeless.size() && (entry == null || shapeless.get(j).order < entry.order)) {
+                entry = shapeless.get(j);
+                source = 1;
+            }
+
+            if (k < this.dynamic.size() && (entry == null || this.dynamic.get(k).order < entry.order)) {
+                entry = this.dynamic.get(k);
+                source = 2;
+            }
+
+            if (entry == null) {
+                return null;
+            }
+
+            if (source == 0) {
+                ++i;
+            } else if (source == 1) {
+                ++j;
+            } else {
+                ++k;
+            }
+
+            if (entry.recipe.matches(craftMatrix, world)) {
+                return entry.recipe;
+            }
+        }
+    }
+
+    private List<Entry> bucket(int key) {
+        List<Entry> list = this.buckets.get(key);
+        return list == null ? Collections.emptyList() : list;
+    }
+
+    private static int shape(int width, int height) {
+        return width << 20 | height << 16;
+    }
+
+    private static class Entry {
+        private final IRecipe recipe;
+        private final int order;
+
+        private Entry(IRecipe recipe, int order) {
+            this.recipe = recipe;
+            this.order = order;
+        }
+    }
+}
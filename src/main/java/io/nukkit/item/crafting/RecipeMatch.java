@@ -0,0 +1,41 @@
+package io.nukkit.item.crafting;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.NonNullList;
+
+import javax.annotation.Nullable;
+
+/**
+ * Result and remaining items of the recipe matching a crafting grid, taken from a single lookup.
+ */
+public class RecipeMatch {
+    @Nullable
+    private final IRecipe recipe;
+    private final ItemStack result;
+    private final NonNullList<ItemStack> remainingItems;
+
+    public RecipeMatch(@Nullable IRecipe recipe, ItemStack result, NonNullList<ItemStack> remainingItems) {
+        this.recipe = recipe;
+        this.result = result;
+        this.remainingItems = remainingItems;
+    }
+
+    /**
+     * Gets the matching recipe, or null if no recipe matches the grid.
+     */
+    @Nullable
+    public IRecipe getRecipe() {
+        return this.recipe;
+    }
+
+    public ItemStack getResult() {
+        return this.result;
+    }
+
+    /**
+     * Gets the items left in the grid after crafting; the grid unchanged if no recipe matches.
+     */
+    public NonNullList<ItemStack> getRemainingItems() {
+        return this.remainingItems;
+    }
+}
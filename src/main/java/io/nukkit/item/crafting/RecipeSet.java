@@ -0,0 +1,88 @@
+package io.nukkit.item.crafting;
+
+import net.minecraft.inventory.InventoryCrafting;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.registry.RegistryNamespaced;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A set of recipes together with their IDs and the index used to look them up. A set is filled on one thread and then
+ * published by {@link CraftingManager}, after which its recipes, IDs and index are never changed again; changes are
+ * made to a copy that replaces it, so a lookup always sees either the old or the new recipes in full. Only the cache of
+ * last matches keeps changing on the main thread.
+ */
+public class RecipeSet {
+    final RegistryNamespaced<ResourceLocation, IRecipe> registry = new RegistryNamespaced<>();
+    final RecipeIndex index = new RecipeIndex();
+    /**
+     * Last recipe matched in each crafting inventory. Players tend to craft the same recipe over and over, so it is
+     * retested before the index is searched. Kept per set, so a replaced set takes its matches with it. Only accessed
+     * from the main thread
+     */
+    final Map<InventoryCrafting, IRecipe> lastMatches = new WeakHashMap<>();
+    private int nextId;
+
+    public RecipeSet() {
+    }
+
+    /**
+     * Creates a copy holding the same recipes under the same IDs.
+     */
+    public RecipeSet(RecipeSet other) {
+        for (IRecipe recipe : other.registry) {
+            this.put(other.registry.getIDForObject(recipe), other.registry.getNameForObject(recipe), recipe);
+        }
+
+        this.nextId = other.nextId;
+    }
+
+    /**
+     * Adds a recipe under the next free ID.
+     *
+     * @throws IllegalStateException if a recipe is already registered under the key
+     */
+    public void add(ResourceLocation key, IRecipe recipe) {
+        if (this.registry.containsKey(key)) {
+            throw new IllegalStateException("Duplicate recipe ignored with ID " + key);
+        }
+
+        this.put(this.nextId++, key, recipe);
+    }
+
+    /**
+     * Adds the recipes in the iteration order of the map.
+     *
+     * @throws IllegalStateException if a recipe is already registered under one of the keys
+     */
+    public void addAll(Map<ResourceLocation, ? extends IRecipe> recipes) {
+        for (Map.Entry<ResourceLocation, ? extends IRecipe> entry : recipes.entrySet()) {
+            this.add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void put(int id, ResourceLocation key, IRecipe recipe) {
+        this.registry.register(id, key, recipe);
+        this.index.add(recipe);
+    }
+
+    @Nullable
+    public IRecipe getRecipe(ResourceLocation key) {
+        return this.registry.getObject(key);
+    }
+
+    @Nullable
+    public IRecipe getRecipe(int id) {
+        return this.registry.getObjectById(id);
+    }
+
+    public int getId(IRecipe recipe) {
+        return this.registry.getIDForObject(recipe);
+    }
+
+    public int size() {
+        return this.index.size();
+    }
+}
@@ -1,423 +1,529 @@
 package io.nukkit.nbt;
 
-import com.google.common.base.Splitter;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
+import java.util.Arrays;
+
+/**
+ * Single pass recursive descent parser for the textual NBT format used by commands. It walks a cursor over the input
+ * characters once, without splitting it into substrings, and reports errors with the position they occurred at.
+ * <p>
+ * Besides the typed arrays {@code [B;1b,2b]}, {@code [I;1,2]} and {@code [L;1L,2L]} it accepts the older syntax: lists
+ * whose elements carry an index prefix such as {@code [0:"a",1:"b"]}, {@code [1,2,3]} as an int array and unquoted
+ * strings containing spaces.
+ */
+public class JsonToNBT {
+    private static final int MAX_DEPTH = 512;
 
-import java.util.Stack;
-import java.util.regex.Pattern;
+    private final String json;
+    private final char[] buffer;
+    private int cursor;
 
-public class JsonToNBT {
-    private static final Logger LOGGER = LogManager.getLogger();
-    private static final Pattern INT_ARRAY_MATCHER = Pattern.compile("\\[[-+\\d|,\\s]+\\]");
+    private JsonToNBT(String json) {
+        this.json = json;
+        this.buffer = json.toCharArray();
+    }
 
     public static NBTTagCompound getTagFromJson(String jsonString) throws NBTException {
-        jsonString = jsonString.trim();
+        JsonToNBT parser = new JsonToNBT(jsonString);
+        parser.skipWhitespace();
 
-        if (!jsonString.startsWith("{")) {
-            throw new NBTException("Invalid tag encountered, expected \'{\' as first char.");
-        } else if (topTagsCount(jsonString) != 1) {
-            throw new NBTException("Encountered multiple top tags, only one expected");
-        } else {
-            return (NBTTagCompound) nameValueToNBT("tag", jsonString).parse();
+        if (!parser.canRead() || parser.peek() != '{') {
+            throw parser.error("Invalid tag encountered, expected '{' as first char.");
         }
-    }
 
-    static int topTagsCount(String str) throws NBTException {
-        int i = 0;
-        boolean flag = false;
-        Stack<Character> stack = new Stack<>();
+        NBTTagCompound compound = parser.readCompound(0);
+        parser.skipWhitespace();
 
-        for (int j = 0; j < str.length(); ++j) {
-            char c0 = str.charAt(j);
+        if (parser.canRead()) {
+            throw parser.error("Encountered multiple top tags, only one expected");
+        }
 
-            if (c0 == 34) {
-                if (isCharEscaped(str, j)) {
-                    if (!flag) {
-                        throw new NBTException("Illegal use of \\\": " + str);
-                    }
-                } else {
-                    flag = !flag;
-                }
-            } else if (!flag) {
-                if (c0 != 123 && c0 != 91) {
-                    if (c0 == 125 && (stack.isEmpty() || stack.pop() != 123)) {
-                        throw new NBTException("Unbalanced curly brackets {}: " + str);
-                    }
+        return compound;
+    }
 
-                    if (c0 == 93 && (stack.isEmpty() || stack.pop() != 91)) {
-                        throw new NBTException("Unbalanced square brackets []: " + str);
-                    }
-                } else {
-                    if (stack.isEmpty()) {
-                        ++i;
-                    }
+    private NBTTag readValue(int depth) throws NBTException {
+        this.skipWhitespace();
 
-                    stack.push(c0);
-                }
-            }
+        if (!this.canRead()) {
+            throw this.error("Expected value");
         }
 
-        if (flag) {
-            throw new NBTException("Unbalanced quotation: " + str);
-        } else if (!stack.isEmpty()) {
-            throw new NBTException("Unbalanced brackets: " + str);
-        } else {
-            if (i == 0 && !str.isEmpty()) {
-                i = 1;
-            }
+        char c0 = this.peek();
 
-            return i;
+        if (c0 == '{') {
+            return this.readCompound(depth + 1);
+        } else if (c0 == '[') {
+            return this.readListOrArray(depth + 1);
+        } else if (c0 == '"') {
+            return new NBTTagString(this.readQuoted());
+        } else {
+            int start = this.cursor;
+            return this.readPrimitive(start, this.scanUnquoted(false));
         }
     }
 
-    static Any joinStrToNBT(String... args) throws NBTException {
-        return nameValueToNBT(args[0], args[1]);
-    }
+    private NBTTagCompound readCompound(int depth) throws NBTException {
+        if (depth > MAX_DEPTH) {
+            throw this.error("Tried to read NBT tag with too high complexity, depth > " + MAX_DEPTH);
+        }
 
-    static Any nameValueToNBT(String key, String value) throws NBTException {
-        value = value.trim();
+        this.expect('{');
+        NBTTagCompound compound = new NBTTagCompound();
+        this.skipWhitespace();
 
-        if (value.startsWith("{")) {
-            value = value.substring(1, value.length() - 1);
-            Compound compound;
-            String s1;
+        while (this.canRead() && this.peek() != '}') {
+            String key = this.readKey();
+            this.skipWhitespace();
+            this.expect(':');
+            compound.put(key, this.readValue(depth));
 
-            for (compound = new Compound(key); value.length() > 0; value = value.substring(s1.length() + 1)) {
-                s1 = nextNameValuePair(value, true);
+            if (!this.hasElementSeparator('}')) {
+                break;
+            }
+        }
 
-                if (s1.length() > 0) {
-                    boolean flag1 = false;
-                    compound.tagList.add(getTagFromNameValue(s1, false));
-                }
+        this.expect('}');
+        return compound;
+    }
 
-                if (value.length() < s1.length() + 1) {
-                    break;
-                }
+    private NBTTag readListOrArray(int depth) throws NBTException {
+        if (depth > MAX_DEPTH) {
+            throw this.error("Tried to read NBT tag with too high complexity, depth > " + MAX_DEPTH);
+        }
 
-                char c1 = value.charAt(s1.length());
+        if (this.cursor + 2 < this.buffer.length && this.buffer[this.cursor + 2] == ';') {
+            char type = this.buffer[this.cursor + 1];
 
-                if (c1 != 44 && c1 != 123 && c1 != 125 && c1 != 91 && c1 != 93) {
-                    throw new NBTException("Unexpected token \'" + c1 + "\' at: " + value.substring(s1.length()));
-                }
+            if (type == 'B' || type == 'I' || type == 'L') {
+                this.cursor += 3;
+                return this.readArray(type);
             }
+        }
 
-            return compound;
-        } else if (value.startsWith("[") && !INT_ARRAY_MATCHER.matcher(value).matches()) {
-            value = value.substring(1, value.length() - 1);
-            List list;
-            String s;
+        return this.isIntArrayAhead() ? this.readIntArray() : this.readList(depth);
+    }
 
-            for (list = new List(key); value.length() > 0; value = value.substring(s.length() + 1)) {
-                s = nextNameValuePair(value, false);
+    private NBTTagList readList(int depth) throws NBTException {
+        this.expect('[');
+        NBTTagList list = new NBTTagList();
+        this.skipWhitespace();
 
-                if (s.length() > 0) {
-                    boolean flag = true;
-                    list.tagList.add(getTagFromNameValue(s, true));
-                }
+        while (this.canRead() && this.peek() != ']') {
+            char c0 = this.peek();
+            NBTTag tag;
 
-                if (value.length() < s.length() + 1) {
-                    break;
-                }
-
-                char c0 = value.charAt(s.length());
+            if (c0 == '{' || c0 == '[' || c0 == '"') {
+                tag = this.readValue(depth);
+            } else {
+                int start = this.cursor;
+                int end = this.scanUnquoted(true);
 
-                if (c0 != 44 && c0 != 123 && c0 != 125 && c0 != 91 && c0 != 93) {
-                    throw new NBTException("Unexpected token \'" + c0 + "\' at: " + value.substring(s.length()));
+                if (this.canRead() && this.peek() == ':') {
+                    ++this.cursor;
+                    tag = this.readValue(depth);
+                } else {
+                    tag = this.readPrimitive(start, end);
                 }
             }
 
-            return list;
-        } else {
-            return new Primitive(key, value);
+            list.appendTag(tag);
+
+            if (!this.hasElementSeparator(']')) {
+                break;
+            }
         }
-    }
 
-    private static Any getTagFromNameValue(String str, boolean isArray) throws NBTException {
-        String s = locateName(str, isArray);
-        String s1 = locateValue(str, isArray);
-        return joinStrToNBT(s, s1);
+        this.expect(']');
+        return list;
     }
 
-    private static String nextNameValuePair(String str, boolean isCompound) throws NBTException {
-        int i = getNextCharIndex(str, ':');
-        int j = getNextCharIndex(str, ',');
+    private NBTTag readArray(char type) throws NBTException {
+        long[] values = new long[16];
+        int size = 0;
+        this.skipWhitespace();
 
-        if (isCompound) {
-            if (i == -1) {
-                throw new NBTException("Unable to locate name/value separator for string: " + str);
+        while (this.canRead() && this.peek() != ']') {
+            int start = this.cursor;
+            NBTTag tag = this.readPrimitive(start, this.scanUnquoted(false));
+            byte id = tag.getId();
+
+            if (id < NBTTag.TAG_BYTE || id > NBTTag.TAG_LONG) {
+                this.cursor = start;
+                throw this.error("Invalid element in " + type + " array");
             }
 
-            if (j != -1 && j < i) {
-                throw new NBTException("Name error at: " + str);
+            long value = ((NBTTagNumber) tag).getLong();
+
+            if (type == 'B' && (byte) value != value || type == 'I' && (int) value != value) {
+                this.cursor = start;
+                throw this.error("Element out of range for " + type + " array");
             }
-        } else if (i == -1 || i > j) {
-            i = -1;
-        }
 
-        return locateValueAt(str, i);
-    }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
 
-    private static String locateValueAt(String str, int index) throws NBTException {
-        Stack<Character> stack = new Stack<>();
-        int i = index + 1;
-        boolean flag = false;
-        boolean flag1 = false;
-        boolean flag2 = false;
+            values[size++] = value;
 
-        for (int j = 0; i < str.length(); ++i) {
-            char c0 = str.charAt(i);
+            if (!this.hasElementSeparator(']')) {
+                break;
+            }
+        }
 
-            if (c0 == 34) {
-                if (isCharEscaped(str, i)) {
-                    if (!flag) {
-                        throw new NBTException("Illegal use of \\\": " + str);
-                    }
-                } else {
-                    flag = !flag;
+        this.expect(']');
 
-                    if (flag && !flag2) {
-                        flag1 = true;
-                    }
+        if (type == 'B') {
+            byte[] abyte = new byte[size];
 
-                    if (!flag) {
-                        j = i;
-                    }
-                }
-            } else if (!flag) {
-                if (c0 != 123 && c0 != 91) {
-                    if (c0 == 125 && (stack.isEmpty() || stack.pop() != 123)) {
-                        throw new NBTException("Unbalanced curly brackets {}: " + str);
-                    }
+            for (int i = 0; i < size; ++i) {
+                abyte[i] = (byte) values[i];
+            }
 
-                    if (c0 == 93 && (stack.isEmpty() || stack.pop() != 91)) {
-                        throw new NBTException("Unbalanced square brackets []: " + str);
-                    }
+            return new NBTTagByteArray(abyte);
+        } else if (type == 'I') {
+            int[] aint = new int[size];
 
-                    if (c0 == 44 && stack.isEmpty()) {
-                        return str.substring(0, i);
-                    }
-                } else {
-                    stack.push(c0);
-                }
+            for (int i = 0; i < size; ++i) {
+                aint[i] = (int) values[i];
             }
 
-            if (!Character.isWhitespace(c0)) {
-                if (!flag && flag1 && j != i) {
-                    return str.substring(0, j + 1);
-                }
+            return new NBTTagIntArray(aint);
+        } else {
+            return new NBTTagLongArray(Arrays.copyOf(values, size));
+        }
+    }
 
-                flag2 = true;
+    /**
+     * Returns whether the brackets at the cursor enclose nothing but comma separated integers, the old untyped int
+     * array syntax.
+     */
+    private boolean isIntArrayAhead() {
+        boolean digit = false;
+
+        for (int i = this.cursor + 1; i < this.buffer.length; ++i) {
+            char c0 = this.buffer[i];
+
+            if (c0 == ']') {
+                return digit;
+            } else if (c0 >= '0' && c0 <= '9') {
+                digit = true;
+            } else if (c0 != '-' && c0 != '+' && c0 != ',' && !Character.isWhitespace(c0)) {
+                return false;
             }
         }
 
-        return str.substring(0, i);
+        return false;
     }
 
-    private static String locateName(String str, boolean isArray) throws NBTException {
-        if (isArray) {
-            str = str.trim();
+    private NBTTag readIntArray() throws NBTException {
+        int start = this.cursor;
+        this.expect('[');
+        int[] values = new int[16];
+        int size = 0;
 
-            if (str.startsWith("{") || str.startsWith("[")) {
-                return "";
+        while (this.peek() != ']') {
+            this.skipWhitespace();
+
+            if (this.peek() == ',') {
+                ++this.cursor;
+                continue;
+            } else if (this.peek() == ']') {
+                break;
             }
-        }
 
-        int i = getNextCharIndex(str, ':');
+            int i = this.cursor;
+            boolean negative = this.buffer[i] == '-';
 
-        if (i == -1) {
-            if (isArray) {
-                return "";
-            } else {
-                throw new NBTException("Unable to locate name/value separator for string: " + str);
+            if (negative || this.buffer[i] == '+') {
+                ++i;
             }
-        } else {
-            return str.substring(0, i).trim();
-        }
-    }
 
-    private static String locateValue(String str, boolean isArray) throws NBTException {
-        if (isArray) {
-            str = str.trim();
+            long value = 0L;
+            int digits = i;
 
-            if (str.startsWith("{") || str.startsWith("[")) {
-                return str;
+            while (i < this.buffer.length && this.buffer[i] >= '0' && this.buffer[i] <= '9' && i - digits < 11) {
+                value = value * 10L + (this.buffer[i++] - '0');
             }
-        }
 
-        int i = getNextCharIndex(str, ':');
+            value = negative ? -value : value;
+            this.cursor = i;
+            this.skipWhitespace();
 
-        if (i == -1) {
-            if (isArray) {
-                return str;
-            } else {
-                throw new NBTException("Unable to locate name/value separator for string: " + str);
+            if (i == digits || (int) value != value || this.peek() != ',' && this.peek() != ']') {
+                while (this.peek() != ']') {
+                    ++this.cursor;
+                }
+
+                ++this.cursor;
+                return new NBTTagString(this.json.substring(start, this.cursor));
             }
-        } else {
-            return str.substring(i + 1).trim();
+
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            values[size++] = (int) value;
         }
+
+        ++this.cursor;
+        return new NBTTagIntArray(Arrays.copyOf(values, size));
     }
 
-    private static int getNextCharIndex(String str, char targetChar) {
-        int i = 0;
+    /**
+     * Reads a compound key, either quoted or everything up to the name/value separator.
+     */
+    private String readKey() throws NBTException {
+        if (this.peek() == '"') {
+            return this.readQuoted();
+        }
 
-        for (boolean flag = true; i < str.length(); ++i) {
-            char c0 = str.charAt(i);
+        int start = this.cursor;
 
-            if (c0 == 34) {
-                if (!isCharEscaped(str, i)) {
-                    flag = !flag;
-                }
-            } else if (flag) {
-                if (c0 == targetChar) {
-                    return i;
-                }
+        while (this.canRead()) {
+            char c0 = this.peek();
 
-                if (c0 == 123 || c0 == 91) {
-                    return -1;
-                }
+            if (c0 == ':') {
+                return this.trimmed(start, this.cursor);
+            } else if (c0 == ',' || c0 == '{' || c0 == '}' || c0 == '[' || c0 == ']' || c0 == '"') {
+                break;
             }
+
+            ++this.cursor;
         }
 
-        return -1;
+        throw this.error("Unable to locate name/value separator");
     }
 
-    private static boolean isCharEscaped(String str, int index) {
-        return index > 0 && str.charAt(index - 1) == 92 && !isCharEscaped(str, index - 1);
-    }
+    private String readQuoted() throws NBTException {
+        int start = this.cursor;
+        this.expect('"');
+        StringBuilder stringbuilder = null;
+        int run = this.cursor;
+
+        while (this.canRead()) {
+            char c0 = this.buffer[this.cursor];
+
+            if (c0 == '"') {
+                String s = stringbuilder == null ? new String(this.buffer, run, this.cursor - run) : stringbuilder.append(this.buffer, run, this.cursor - run).toString();
+                ++this.cursor;
+                return s;
+            } else if (c0 == '\\' && this.cursor + 1 < this.buffer.length) {
+                char c1 = this.buffer[this.cursor + 1];
+
+                if (c1 == '"' || c1 == '\\') {
+                    if (stringbuilder == null) {
+                        stringbuilder = new StringBuilder();
+                    }
 
-    abstract static class Any {
-        protected String json;
+                    stringbuilder.append(this.buffer, run, this.cursor - run).append(c1);
+                    this.cursor += 2;
+                    run = this.cursor;
+                    continue;
+                }
+            }
 
-        public abstract NBTTag parse() throws NBTException;
+            ++this.cursor;
+        }
+
+        this.cursor = start;
+        throw this.error("Unbalanced quotation");
     }
 
-    static class Compound extends Any {
-        protected java.util.List<Any> tagList = Lists.newArrayList();
+    /**
+     * Moves the cursor to the end of an unquoted value and returns the end of its trimmed content. Inside lists a
+     * colon ends the token too, since it separates the old index prefix from the value.
+     */
+    private int scanUnquoted(boolean inList) throws NBTException {
+        int start = this.cursor;
+
+        while (this.canRead()) {
+            char c0 = this.peek();
+
+            if (c0 == ',' || c0 == '}' || c0 == ']' || inList && c0 == ':') {
+                break;
+            } else if (c0 == '{' || c0 == '[' || c0 == '"') {
+                throw this.error("Unexpected '" + c0 + "'");
+            }
 
-        public Compound(String jsonIn) {
-            this.json = jsonIn;
+            ++this.cursor;
         }
 
-        public NBTTag parse() throws NBTException {
-            NBTTagCompound nbttagcompound = new NBTTagCompound();
+        int end = this.cursor;
 
-            for (Any any : this.tagList) {
-                nbttagcompound.setTag(any.json, any.parse());
-            }
+        while (end > start && Character.isWhitespace(this.buffer[end - 1])) {
+            --end;
+        }
 
-            return nbttagcompound;
+        if (end == start) {
+            throw this.error("Expected value");
         }
+
+        return end;
     }
 
-    static class List extends Any {
-        protected java.util.List<Any> tagList = Lists.newArrayList();
+    /**
+     * Turns an unquoted token into a number tag when it looks like one, a byte for true and false, or a string
+     * otherwise. Numbers that do not fit their type are read as strings.
+     */
+    private NBTTag readPrimitive(int start, int end) {
+        int i = start;
 
-        public List(String json) {
-            this.json = json;
+        if (this.buffer[i] == '-' || this.buffer[i] == '+') {
+            ++i;
         }
 
-        public NBTTag parse() throws NBTException {
-            NBTTagList nbttaglist = new NBTTagList();
+        int digits = i;
+
+        while (i < end && isDigit(this.buffer[i])) {
+            ++i;
+        }
+
+        int intDigits = i - digits;
+        boolean decimal = false;
+
+        if (i < end && this.buffer[i] == '.') {
+            decimal = true;
+            int fraction = ++i;
+
+            while (i < end && isDigit(this.buffer[i])) {
+                ++i;
+            }
 
-            for (Any any : this.tagList) {
-                nbttaglist.appendTag(any.parse());
+            if (i == fraction) {
+                return this.readString(start, end);
             }
+        } else if (intDigits == 0) {
+            return this.readString(start, end);
+        }
 
-            return nbttaglist;
+        try {
+            if (i == end) {
+                return decimal ? new NBTTagDouble(Double.parseDouble(new String(this.buffer, start, end - start))) : new NBTTagInt((int) this.parseIntegral(start, end, Integer.MIN_VALUE, Integer.MAX_VALUE));
+            } else if (i == end - 1) {
+                switch (this.buffer[i]) {
+                    case 'd':
+                    case 'D':
+                        return new NBTTagDouble(Double.parseDouble(new String(this.buffer, start, i - start)));
+
+                    case 'f':
+                    case 'F':
+                        return new NBTTagFloat(Float.parseFloat(new String(this.buffer, start, i - start)));
+
+                    case 'b':
+                    case 'B':
+                        return decimal ? this.readString(start, end) : new NBTTagByte((byte) this.parseIntegral(start, i, Byte.MIN_VALUE, Byte.MAX_VALUE));
+
+                    case 's':
+                    case 'S':
+                        return decimal ? this.readString(start, end) : new NBTTagShort((short) this.parseIntegral(start, i, Short.MIN_VALUE, Short.MAX_VALUE));
+
+                    case 'l':
+                    case 'L':
+                        return decimal ? this.readString(start, end) : new NBTTagLong(this.parseIntegral(start, i, Long.MIN_VALUE, Long.MAX_VALUE));
+                }
+            }
+        } catch (NumberFormatException ignored) {
         }
+
+        return this.readString(start, end);
     }
 
-    static class Primitive extends Any {
-        private static final Pattern DOUBLE = Pattern.compile("[-+]?[0-9]*\\.?[0-9]+[d|D]");
-        private static final Pattern FLOAT = Pattern.compile("[-+]?[0-9]*\\.?[0-9]+[f|F]");
-        private static final Pattern BYTE = Pattern.compile("[-+]?[0-9]+[b|B]");
-        private static final Pattern LONG = Pattern.compile("[-+]?[0-9]+[l|L]");
-        private static final Pattern SHORT = Pattern.compile("[-+]?[0-9]+[s|S]");
-        private static final Pattern INTEGER = Pattern.compile("[-+]?[0-9]+");
-        private static final Pattern DOUBLE_UNTYPED = Pattern.compile("[-+]?[0-9]*\\.?[0-9]+");
-        private static final Splitter SPLITTER = Splitter.on(',').omitEmptyStrings();
-        protected String jsonValue;
-
-        public Primitive(String jsonIn, String valueIn) {
-            this.json = jsonIn;
-            this.jsonValue = valueIn;
+    private NBTTag readString(int start, int end) {
+        int length = end - start;
+
+        if (length == 4 && this.regionMatches(start, "true")) {
+            return new NBTTagByte((byte) 1);
+        } else if (length == 5 && this.regionMatches(start, "false")) {
+            return new NBTTagByte((byte) 0);
         }
 
-        public NBTTag parse() throws NBTException {
-            try {
-                if (DOUBLE.matcher(this.jsonValue).matches()) {
-                    return new NBTTagDouble(Double.parseDouble(this.jsonValue.substring(0, this.jsonValue.length() - 1)));
-                }
+        String s = new String(this.buffer, start, length);
+        return new NBTTagString(s.indexOf('\\') < 0 ? s : s.replace("\\\"", "\"").replace("\\\\", "\\"));
+    }
 
-                if (FLOAT.matcher(this.jsonValue).matches()) {
-                    return new NBTTagFloat(Float.parseFloat(this.jsonValue.substring(0, this.jsonValue.length() - 1)));
-                }
+    private long parseIntegral(int start, int end, long min, long max) {
+        boolean negative = this.buffer[start] == '-';
+        int i = negative || this.buffer[start] == '+' ? start + 1 : start;
 
-                if (BYTE.matcher(this.jsonValue).matches()) {
-                    return new NBTTagByte(Byte.parseByte(this.jsonValue.substring(0, this.jsonValue.length() - 1)));
-                }
+        long value = 0L;
 
-                if (LONG.matcher(this.jsonValue).matches()) {
-                    return new NBTTagLong(Long.parseLong(this.jsonValue.substring(0, this.jsonValue.length() - 1)));
-                }
+        if (end - i > 18) {
+            value = Long.parseLong(new String(this.buffer, start, end - start));
+        } else {
+            while (i < end) {
+                value = value * 10L + (this.buffer[i++] - '0');
+            }
 
-                if (SHORT.matcher(this.jsonValue).matches()) {
-                    return new NBTTagShort(Short.parseShort(this.jsonValue.substring(0, this.jsonValue.length() - 1)));
-                }
+            value = negative ? -value : value;
+        }
 
-                if (INTEGER.matcher(this.jsonValue).matches()) {
-                    return new NBTTagInt(Integer.parseInt(this.jsonValue));
-                }
+        if (value < min || value > max) {
+            throw new NumberFormatException();
+        }
 
-                if (DOUBLE_UNTYPED.matcher(this.jsonValue).matches()) {
-                    return new NBTTagDouble(Double.parseDouble(this.jsonValue));
-                }
+        return value;
+    }
 
-                if ("true".equalsIgnoreCase(this.jsonValue) || "false".equalsIgnoreCase(this.jsonValue)) {
-                    return new NBTTagByte((byte) (Boolean.parseBoolean(this.jsonValue) ? 1 : 0));
-                }
-            } catch (NumberFormatException var6) {
-                this.jsonValue = this.jsonValue.replaceAll("\\\\\"", "\"");
-                return new NBTTagString(this.jsonValue);
-            }
+    private boolean regionMatches(int start, String s) {
+        return this.json.regionMatches(true, start, s, 0, s.length());
+    }
 
-            if (this.jsonValue.startsWith("[") && this.jsonValue.endsWith("]")) {
-                String s = this.jsonValue.substring(1, this.jsonValue.length() - 1);
-                String[] astring = Iterables.toArray(SPLITTER.split(s), String.class);
+    private static boolean isDigit(char c0) {
+        return c0 >= '0' && c0 <= '9';
+    }
 
-                try {
-                    int[] aint = new int[astring.length];
+    /**
+     * Skips a comma after an element. Returns false if there is none, in which case the given closing bracket must
+     * follow.
+     */
+    private boolean hasElementSeparator(char close) throws NBTException {
+        this.skipWhitespace();
+
+        if (this.canRead() && this.peek() == ',') {
+            ++this.cursor;
+            this.skipWhitespace();
+            return true;
+        } else if (this.canRead() && this.peek() == close) {
+            return false;
+        }
 
-                    for (int j = 0; j < astring.length; ++j) {
-                        aint[j] = Integer.parseInt(astring[j].trim());
-                    }
+        throw this.error("Expected ',' or '" + close + "'");
+    }
 
-                    return new NBTTagIntArray(aint);
-                } catch (NumberFormatException var5) {
-                    return new NBTTagString(this.jsonValue);
-                }
-            } else {
-                if (this.jsonValue.startsWith("\"") && this.jsonValue.endsWith("\"")) {
-                    this.jsonValue = this.jsonValue.substring(1, this.jsonValue.length() - 1);
-                }
+    private void expect(char c0) throws NBTException {
+        if (!this.canRead() || this.peek() != c0) {
+            throw this.error("Expected '" + c0 + "'");
+        }
 
-                this.jsonValue = this.jsonValue.replaceAll("\\\\\"", "\"");
-                StringBuilder stringbuilder = new StringBuilder();
+        ++this.cursor;
+    }
 
-                for (int i = 0; i < this.jsonValue.length(); ++i) {
-                    if (i < this.jsonValue.length() - 1 && this.jsonValue.charAt(i) == 92 && this.jsonValue.charAt(i + 1) == 92) {
-                        stringbuilder.append('\\');
-                        ++i;
-                    } else {
-                        stringbuilder.append(this.jsonValue.charAt(i));
-                    }
-                }
+    private String trimmed(int start, int end) {
+        while (start < end && Character.isWhitespace(this.buffer[start])) {
+            ++start;
+        }
 
-                return new NBTTagString(stringbuilder.toString());
-            }
+        while (end > start && Character.isWhitespace(this.buffer[end - 1])) {
+            --end;
         }
+
+        return new String(this.buffer, start, end - start);
+    }
+
+    private void skipWhitespace() {
+        while (this.cursor < this.buffer.length && Character.isWhitespace(this.buffer[this.cursor])) {
+            ++this.cursor;
+        }
+    }
+
+    private boolean canRead() {
+        return this.cursor < this.buffer.length;
+    }
+
+    private char peek() {
+        return this.buffer[this.cursor];
+    }
+
+    private NBTException error(String message) {
+        return new NBTException(message, this.json, this.cursor);
     }
 }
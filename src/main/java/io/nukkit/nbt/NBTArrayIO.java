@@ -0,0 +1,148 @@
+package io.nukkit.nbt;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.*;
+
+/**
+ * Bulk readers and writers for primitive NBT payloads. Values are moved through a per-thread scratch buffer in chunks,
+ * so a large array costs one readFully/write per chunk instead of one DataInput/DataOutput call per element.
+ */
+final class NBTArrayIO {
+    private static final int SCRATCH_SIZE = 8192;
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[SCRATCH_SIZE]);
+
+    private NBTArrayIO() {
+    }
+
+    static void readShorts(DataInput input, short[] dst, int length) throws IOException {
+        byte[] scratch = SCRATCH.get();
+        ShortBuffer view = ByteBuffer.wrap(scratch).asShortBuffer();
+
+        for (int i = 0; i < length; ) {
+            int n = Math.min(length - i, SCRATCH_SIZE / 2);
+            input.readFully(scratch, 0, n * 2);
+            view.clear();
+            view.get(dst, i, n);
+            i += n;
+        }
+    }
+
+    static void readInts(DataInput input, int[] dst, int length) throws IOException {
+        byte[] scratch = SCRATCH.get();
+        IntBuffer view = ByteBuffer.wrap(scratch).asIntBuffer();
+
+        for (int i = 0; i < length; ) {
+            int n = Math.min(length - i, SCRATCH_SIZE / 4);
+            input.readFully(scratch, 0, n * 4);
+            view.clear();
+            view.get(dst, i, n);
+            i += n;
+        }
+    }
+
+    static void readLongs(DataInput input, long[] dst, int length) throws IOException {
+        byte[] scratch = SCRATCH.get();
+        LongBuffer view = ByteBuffer.wrap(scratch).asLongBuffer();
+
+        for (int i = 0; i < length; ) {
+            int n = Math.min(length - i, SCRATCH_SIZE / 8);
+            input.readFully(scratch, 0, n * 8);
+            view.clear();
+            view.get(dst, i, n);
+            i += n;
+        }
+    }
+
+    static void readFloats(DataInput input, float[] dst, int length) throws IOException {
+        byte[] scratch = SCRATCH.get();
+        FloatBuffer view = ByteBuffer.wrap(scratch).asFloatBuffer();
+
+        for (int i = 0; i < length; ) {
+            int n = Math.min(length - i, SCRATCH_SIZE / 4);
+            input.readFully(scratch, 0, n * 4);
+            view.clear();
+            view.get(dst, i, n);
+            i += n;
+        }
+    }
+
+    static void readDoubles(DataInput input, double[] dst, int length) throws IOException {
+        byte[] scratch = SCRATCH.get();
+        DoubleBuffer view = ByteBuffer.wrap(scratch).asDoubleBuffer();
+
+        for (int i = 0; i < length; ) {
+            int n = Math.min(length - i, SCRATCH_SIZE / 8);
+            input.readFully(scratch, 0, n * 8);
+            view.clear();
+            view.get(dst, i, n);
+            i += n;
+        }
+    }
+
+    static void writeShorts(DataOutput output, short[] src, int length) throws IOException {
+        byte[] scratch = SCRATCH.get();
+        ShortBuffer view = ByteBuffer.wrap(scratch).asShortBuffer();
+
+        for (int i = 0; i < length; ) {
+            int n = Math.min(length - i, SCRATCH_SIZE / 2);
+            view.clear();
+            view.put(src, i, n);
+            output.write(scratch, 0, n * 2);
+            i += n;
+        }
+    }
+
+    static void writeInts(DataOutput output, int[] src, int length) throws IOException {
+        byte[] scratch = SCRATCH.get();
+        IntBuffer view = ByteBuffer.wrap(scratch).asIntBuffer();
+
+        for (int i = 0; i < length; ) {
+            int n = Math.min(length - i, SCRATCH_SIZE / 4);
+            view.clear();
+            view.put(src, i, n);
+            output.write(scratch, 0, n * 4);
+            i += n;
+        }
+    }
+
+    static void writeLongs(DataOutput output, long[] src, int length) throws IOException {
+        byte[] scratch = SCRATCH.get();
+        LongBuffer view = ByteBuffer.wrap(scratch).asLongBuffer();
+
+        for (int i = 0; i < length; ) {
+            int n = Math.min(length - i, SCRATCH_SIZE / 8);
+            view.clear();
+            view.put(src, i, n);
+            output.write(scratch, 0, n * 8);
+            i += n;
+        }
+    }
+
+    static void writeFloats(DataOutput output, float[] src, int length) throws IOException {
+        byte[] scratch = SCRATCH.get();
+        FloatBuffer view = ByteBuffer.wrap(scratch).asFloatBuffer();
+
+        for (int i = 0; i < length; ) {
+            int n = Math.min(length - i, SCRATCH_SIZE / 4);
+            view.clear();
+            view.put(src, i, n);
+            output.write(scratch, 0, n * 4);
+            i += n;
+        }
+    }
+
+    static void writeDoubles(DataOutput output, double[] src, int length) throws IOException {
+        byte[] scratch = SCRATCH.get();
+        DoubleBuffer view = ByteBuffer.wrap(scratch).asDoubleBuffer();
+
+        for (int i = 0; i < length; ) {
+            int n = Math.min(length - i, SCRATCH_SIZE / 8);
+            view.clear();
+            view.put(src, i, n);
+            output.write(scratch, 0, n * 8);
+            i += n;
+        }
+    }
+}
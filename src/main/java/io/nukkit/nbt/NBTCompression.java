@@ -0,0 +1,172 @@
+package io.nukkit.nbt;
+
+import javax.annotation.Nullable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A compression codec for NBT streams. The ids of {@link #GZIP}, {@link #ZLIB} and {@link #NONE} match the compression
+ * type byte used by region files. {@link #LZ} writes a block layout of its own that other tools cannot read, so its id
+ * lies outside the range region files use and it is only meant for data this server reads back itself.
+ * <p>
+ * Deflate based codecs borrow their {@link Inflater}/{@link Deflater} and I/O buffers from a per-thread pool and hand
+ * them back when the stream is closed, so a thread saving many compounds keeps reusing the same native zlib state.
+ */
+public abstract class NBTCompression {
+    public static final NBTCompression GZIP = new Gzip(Deflater.DEFAULT_COMPRESSION);
+    public static final NBTCompression ZLIB = new Zlib(Deflater.DEFAULT_COMPRESSION);
+    public static final NBTCompression NONE = new None();
+    public static final NBTCompression LZ = new LZ();
+    /**
+     * Id of {@link #LZ}, which is not a region file compression type.
+     */
+    public static final int LZ_ID = 64;
+
+    private final int id;
+
+    NBTCompression(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Returns the gzip codec compressing at the given deflate level.
+     */
+    public static NBTCompression gzip(int level) {
+        checkLevel(level);
+        return level == Deflater.DEFAULT_COMPRESSION ? GZIP : new Gzip(level);
+    }
+
+    /**
+     * Returns the raw zlib codec compressing at the given deflate level.
+     */
+    public static NBTCompression zlib(int level) {
+        checkLevel(level);
+        return level == Deflater.DEFAULT_COMPRESSION ? ZLIB : new Zlib(level);
+    }
+
+    /**
+     * Gets the codec for the given id, or null if it is unknown.
+     */
+    @Nullable
+    public static NBTCompression byId(int id) {
+        switch (id) {
+            case 1:
+                return GZIP;
+
+            case 2:
+                return ZLIB;
+
+            case 3:
+                return NONE;
+
+            case LZ_ID:
+                return LZ;
+
+            default:
+                return null;
+        }
+    }
+
+    private static void checkLevel(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid deflate level: " + level);
+        }
+    }
+
+    /**
+     * Frees the native memory held by the pooled inflaters and deflaters of all threads. Streams opened afterwards
+     * no longer pool them. Called when the server stops.
+     */
+    public static void releasePooled() {
+        NBTCompressionPool.shutdown();
+    }
+
+    /**
+     * Gets the id of this codec, which is the region file compression type except for {@link #LZ}.
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * Wraps the given stream so that reads return the decompressed data. Closing the returned stream closes the
+     * given one.
+     */
+    public abstract InputStream decompress(InputStream input) throws IOException;
+
+    /**
+     * Wraps the given stream so that writes are compressed into it. Closing the returned stream finishes the
+     * compressed data and closes the given one.
+     */
+    public abstract OutputStream compress(OutputStream output) throws IOException;
+
+    static class Gzip extends NBTCompression {
+        private final int level;
+
+        Gzip(int level) {
+            super(1);
+            this.level = level;
+        }
+
+        public InputStream decompress(InputStream input) throws IOException {
+            return new NBTCompressionStreams.GzipInput(input);
+        }
+
+        public OutputStream compress(OutputStream output) throws IOException {
+            return new NBTCompressionStreams.GzipOutput(output, this.level);
+        }
+    }
+
+    static class Zlib extends NBTCompression {
+        private final int level;
+
+        Zlib(int level) {
+            super(2);
+            this.level = level;
+        }
+
+        public InputStream decompress(InputStream input) throws IOException {
+            return new NBTCompressionStreams.ZlibInput(input);
+        }
+
+        public OutputStream compress(OutputStream output) throws IOException {
+            return new NBTCompressionStreams.ZlibOutput(output, this.level);
+        }
+    }
+
+    static class None extends NBTCompression {
+        None() {
+            super(3);
+        }
+
+        public InputStream decompress(InputStream input) throws IOException {
+            return input;
+        }
+
+        public OutputStream compress(OutputStream output) throws IOException {
+            return new FilterOutputStream(output) {
+                public void write(byte[] b, int off, int len) throws IOException {
+                    this.out.write(b, off, len);
+                }
+            };
+        }
+    }
+
+    static class LZ extends NBTCompression {
+        LZ() {
+            super(LZ_ID);
+        }
+
+        public InputStream decompress(InputStream input) throws IOException {
+            return new NBTCompressionStreams.LZInput(input);
+        }
+
+        public OutputStream compress(OutputStream output) throws IOException {
+            return new NBTCompressionStreams.LZOutput(output);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package io.nukkit.nbt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Per-thread pool of the native zlib objects and byte buffers used by the NBT compression streams. Objects are taken
+ * out of the pool while a stream is open and parked again when it is closed; a second stream opened on the same thread
+ * meanwhile simply gets a fresh object. Native memory held by parked objects is freed by {@link #shutdown()}.
+ */
+final class NBTCompressionPool {
+    private static final int MAX_BUFFERS = 4;
+    private static final int MAX_BLOCKS = 2;
+    private static final Map<Thread, NBTCompressionPool> POOLS = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final ThreadLocal<NBTCompressionPool> LOCAL = ThreadLocal.withInitial(() -> {
+        NBTCompressionPool pool = new NBTCompressionPool();
+        POOLS.put(Thread.currentThread(), pool);
+        return pool;
+    });
+    private static volatile boolean shutdown;
+
+    private final Inflater[] inflaters = new Inflater[2];
+    private final Deflater[] deflaters = new Deflater[22];
+    private final byte[][] buffers = new byte[MAX_BUFFERS][];
+    private int bufferCount;
+    private final byte[][] blocks = new byte[MAX_BLOCKS][];
+    private int blockCount;
+    private int[] table;
+
+    private NBTCompressionPool() {
+    }
+
+    static NBTCompressionPool get() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Ends every parked inflater and deflater of every thread. Objects still in use are ended when their stream is
+     * closed, and nothing is pooled afterwards.
+     */
+    static void shutdown() {
+        shutdown = true;
+        List<NBTCompressionPool> pools;
+
+        synchronized (POOLS) {
+            pools = new ArrayList<>(POOLS.values());
+        }
+
+        for (NBTCompressionPool pool : pools) {
+            pool.end();
+        }
+    }
+
+    private static int deflaterSlot(int level, boolean nowrap) {
+        return (level + 1) * 2 + (nowrap ? 1 : 0);
+    }
+
+    synchronized Inflater borrowInflater(boolean nowrap) {
+        int slot = nowrap ? 1 : 0;
+        Inflater inflater = this.inflaters[slot];
+
+        if (inflater == null) {
+            return new Inflater(nowrap);
+        }
+
+        this.inflaters[slot] = null;
+        return inflater;
+    }
+
+    synchronized void releaseInflater(Inflater inflater, boolean nowrap) {
+        int slot = nowrap ? 1 : 0;
+
+        if (!shutdown && this.inflaters[slot] == null) {
+            inflater.reset();
+            this.inflaters[slot] = inflater;
+        } else {
+            inflater.end();
+        }
+    }
+
+    synchronized Deflater borrowDeflater(int level, boolean nowrap) {
+        int slot = deflaterSlot(level, nowrap);
+        Deflater deflater = this.deflaters[slot];
+
+        if (deflater == null) {
+            return new Deflater(level, nowrap);
+        }
+
+        this.deflaters[slot] = null;
+        return deflater;
+    }
+
+    synchronized void releaseDeflater(Deflater deflater, int level, boolean nowrap) {
+        int slot = deflaterSlot(level, nowrap);
+
+        if (!shutdown && this.deflaters[slot] == null) {
+            deflater.reset();
+            this.deflaters[slot] = deflater;
+        } else {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Takes a buffer of {@link NBTCompressionStreams#BUFFER_SIZE} bytes.
+     */
+    synchronized byte[] borrowBuffer() {
+        if (this.bufferCount == 0) {
+            return new byte[NBTCompressionStreams.BUFFER_SIZE];
+        }
+
+        byte[] buffer = this.buffers[--this.bufferCount];
+        this.buffers[this.bufferCount] = null;
+        return buffer;
+    }
+
+    synchronized void releaseBuffer(byte[] buffer) {
+        if (!shutdown && this.bufferCount < MAX_BUFFERS && buffer.length == NBTCompressionStreams.BUFFER_SIZE) {
+            this.buffers[this.bufferCount++] = buffer;
+        }
+    }
+
+    /**
+     * Takes a buffer large enough for one compressed or uncompressed LZ block.
+     */
+    synchronized byte[] borrowBlock() {
+        if (this.blockCount == 0) {
+            return new byte[NBTCompressionStreams.LZ_BUFFER_SIZE];
+        }
+
+        byte[] block = this.blocks[--this.blockCount];
+        this.blocks[this.blockCount] = null;
+        return block;
+    }
+
+    synchronized void releaseBlock(byte[] block) {
+        if (!shutdown && this.blockCount < MAX_BLOCKS) {
+            this.blocks[this.blockCount++] = block;
+        }
+    }
+
+    /**
+     * Takes the hash table used by the LZ block compressor.
+     */
+    synchronized int[] borrowTable() {
+        int[] table = this.table;
+        this.table = null;
+        return table == null ? new int[NBTCompressionStreams.LZ_TABLE_SIZE] : table;
+    }
+
+    synchronized void releaseTable(int[] table) {
+        if (!shutdown) {
+            this.table = table;
+        }
+    }
+
+    private synchronized void end() {
+        for (int i = 0; i < this.inflaters.length; ++i) {
+            if (this.inflaters[i] != null) {
+                this.inflaters[i].end();
+                this.inflaters[i] = null;
+            }
+        }
+
+        for (int i = 0; i < this.deflaters.length; ++i) {
+            if (this.deflaters[i] != null) {
+                this.deflaters[i].end();
+                this.deflaters[i] = null;
+            }
+        }
+
+        for (int i = 0; i < this.bufferCount; ++i) {
+            this.buffers[i] = null;
+        }
+
+        this.bufferCount = 0;
+
+        for (int i = 0; i < this.blockCount; ++i) {
+            this.blocks[i] = null;
+        }
+
+        this.blockCount = 0;
+        this.table = null;
+    }
+}
@@ -0,0 +1,738 @@
+package io.nukkit.nbt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Stream implementations behind {@link NBTCompression}. The gzip streams handle the header and trailer themselves so
+ * that the raw inflater/deflater can come from the {@link NBTCompressionPool} instead of being created by the JDK
+ * streams; the internal buffers of all deflate streams are pooled as well.
+ */
+final class NBTCompressionStreams {
+    static final int BUFFER_SIZE = 8192;
+
+    private static final byte[] GZIP_HEADER = new byte[]{(byte) 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 0};
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    /**
+     * Uncompressed size of one LZ block.
+     */
+    static final int LZ_BLOCK_SIZE = 1 << 16;
+    static final int LZ_BUFFER_SIZE = maxCompressedLength(LZ_BLOCK_SIZE);
+    private static final int LZ_STORED = 0x80000000;
+    private static final int LZ_MIN_MATCH = 4;
+    private static final int LZ_LAST_LITERALS = 5;
+    private static final int LZ_MIN_LENGTH = 13;
+    private static final int LZ_MAX_OFFSET = 65535;
+    private static final int LZ_HASH_LOG = 12;
+    static final int LZ_TABLE_SIZE = 1 << LZ_HASH_LOG;
+
+    private NBTCompressionStreams() {
+    }
+
+    private static int readUByte(InputStream input) throws IOException {
+        int i = input.read();
+
+        if (i == -1) {
+            throw new EOFException();
+        }
+
+        return i;
+    }
+
+    private static int readInt(InputStream input) throws IOException {
+        return readUByte(input) << 24 | readUByte(input) << 16 | readUByte(input) << 8 | readUByte(input);
+    }
+
+    private static void writeInt(OutputStream output, int value) throws IOException {
+        output.write(value >>> 24);
+        output.write(value >>> 16);
+        output.write(value >>> 8);
+        output.write(value);
+    }
+
+    private static void readFully(InputStream input, byte[] b, int len) throws IOException {
+        for (int n = 0; n < len; ) {
+            int i = input.read(b, n, len - n);
+
+            if (i == -1) {
+                throw new EOFException("Unexpected end of LZ stream");
+            }
+
+            n += i;
+        }
+    }
+
+    /**
+     * Gets the largest size a block of the given length can compress to.
+     */
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses a block with an LZ77 matcher using the LZ4 sequence layout, returning the compressed length.
+     */
+    static int compressBlock(byte[] src, int srcOff, int srcLen, byte[] dst, int[] table) {
+        int end = srcOff + srcLen;
+        int anchor = srcOff;
+        int op = 0;
+
+        if (srcLen >= LZ_MIN_LENGTH) {
+            Arrays.fill(table, -1);
+            int matchLimit = end - LZ_LAST_LITERALS;
+            int limit = end - LZ_MIN_LENGTH + 1;
+            int ip = srcOff;
+
+            while (ip < limit) {
+                int sequence = readIntLE(src, ip);
+                int hash = (sequence * -1640531535) >>> (32 - LZ_HASH_LOG);
+                int ref = table[hash];
+                table[hash] = ip;
+
+                if (ref < 0 || ip - ref > LZ_MAX_OFFSET || readIntLE(src, ref) != sequence) {
+                    ip += 1 + ((ip - anchor) >>> 6);
+                    continue;
+                }
+
+                int matchLength = LZ_MIN_MATCH;
+
+                while (ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength]) {
+                    ++matchLength;
+                }
+
+                while (ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1]) {
+                    --ip;
+                    --ref;
+                    ++matchLength;
+                }
+
+                op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLength);
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+
+        return writeSequence(src, anchor, end - anchor, dst, op, 0, 0);
+    }
+
+    private static int writeSequence(byte[] src, int literalOff, int literalLength, byte[] dst, int op, int offset, int matchLength) {
+        int tokenOff = op++;
+        int token;
+
+        if (literalLength >= 15) {
+            token = 15 << 4;
+            op = writeLength(dst, op, literalLength - 15);
+        } else {
+            token = literalLength << 4;
+        }
+
+        System.arraycopy(src, literalOff, dst, op, literalLength);
+        op += literalLength;
+
+        if (matchLength > 0) {
+            dst[op++] = (byte) offset;
+            dst[op++] = (byte) (offset >>> 8);
+            int length = matchLength - LZ_MIN_MATCH;
+
+            if (length >= 15) {
+                token |= 15;
+                op = writeLength(dst, op, length - 15);
+            } else {
+                token |= length;
+            }
+        }
+
+        dst[tokenOff] = (byte) token;
+        return op;
+    }
+
+    private static int writeLength(byte[] dst, int op, int length) {
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    private static int readIntLE(byte[] b, int off) {
+        return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24;
+    }
+
+    /**
+     * Decompresses a block produced by {@link #compressBlock}, returning the number of bytes written to dst.
+     */
+    static int decompressBlock(byte[] src, int srcLen, byte[] dst, int dstLen) throws IOException {
+        int ip = 0;
+        int op = 0;
+
+        while (ip < srcLen) {
+            int token = src[ip++] & 0xff;
+            int literalLength = token >>> 4;
+
+            if (literalLength == 15) {
+                int b;
+
+                do {
+                    if (ip >= srcLen) {
+                        throw new ZipException("Corrupt LZ block");
+                    }
+
+                    b = src[ip++] & 0xff;
+                    literalLength += b;
+                } while (b == 255);
+            }
+
+            if (literalLength > srcLen - ip || literalLength > dstLen - op) {
+                throw new ZipException("Corrupt LZ block");
+            }
+
+            System.arraycopy(src, ip, dst, op, literalLength);
+            ip += literalLength;
+            op += literalLength;
+
+            if (ip == srcLen) {
+                break;
+            }
+
+            if (ip + 2 > srcLen) {
+                throw new ZipException("Corrupt LZ block");
+            }
+
+            int offset = (src[ip] & 0xff) | (src[ip + 1] & 0xff) << 8;
+            ip += 2;
+            int matchLength = (token & 15) + LZ_MIN_MATCH;
+
+            if ((token & 15) == 15) {
+                int b;
+
+                do {
+                    if (ip >= srcLen) {
+                        throw new ZipException("Corrupt LZ block");
+                    }
+
+                    b = src[ip++] & 0xff;
+                    matchLength += b;
+                } while (b == 255);
+            }
+
+            if (offset == 0 || offset > op || matchLength > dstLen - op) {
+                throw new ZipException("Corrupt LZ block");
+            }
+
+            int ref = op - offset;
+
+            if (offset >= matchLength) {
+                System.arraycopy(dst, ref, dst, op, matchLength);
+                op += matchLength;
+            } else {
+                for (int i = 0; i < matchLength; ++i) {
+                    dst[op++] = dst[ref++];
+                }
+            }
+        }
+
+        return op;
+    }
+
+    static class GzipInput extends InflaterInputStream {
+        private final NBTCompressionPool pool = NBTCompressionPool.get();
+        private final CRC32 crc = new CRC32();
+        private boolean eos;
+        private boolean released;
+        /**
+         * Start of the bytes in the buffer, up to {@link #len}, that the inflater read past the end of the last member
+         * and that belong to the header of the next one
+         */
+        private int pending;
+
+        GzipInput(InputStream input) throws IOException {
+            super(input, NBTCompressionPool.get().borrowInflater(true), 1);
+            this.buf = this.pool.borrowBuffer();
+
+            try {
+                this.readHeader();
+            } catch (IOException e) {
+                this.release();
+                throw e;
+            }
+        }
+
+        private void readHeader() throws IOException {
+            CRC32 headerCrc = new CRC32();
+            int magic = this.readHeaderByte(headerCrc) | this.readHeaderByte(headerCrc) << 8;
+
+            if (magic != GZIP_MAGIC) {
+                throw new ZipException("Not in GZIP format");
+            }
+
+            if (this.readHeaderByte(headerCrc) != 8) {
+                throw new ZipException("Unsupported compression method");
+            }
+
+            int flags = this.readHeaderByte(headerCrc);
+
+            for (int i = 0; i < 6; ++i) {
+                this.readHeaderByte(headerCrc);
+            }
+
+            if ((flags & FEXTRA) == FEXTRA) {
+                int length = this.readHeaderByte(headerCrc) | this.readHeaderByte(headerCrc) << 8;
+
+                for (int i = 0; i < length; ++i) {
+                    this.readHeaderByte(headerCrc);
+                }
+            }
+
+            if ((flags & FNAME) == FNAME) {
+                //noinspection StatementWithEmptyBody
+                while (this.readHeaderByte(headerCrc) != 0) {
+                }
+            }
+
+            if ((flags & FCOMMENT) == FCOMMENT) {
+                //noinspection StatementWithEmptyBody
+                while (this.readHeaderByte(headerCrc) != 0) {
+                }
+            }
+
+            if ((flags & FHCRC) == FHCRC) {
+                int expected = (int) headerCrc.getValue() & 0xffff;
+
+                if ((this.readByte() | this.readByte() << 8) != expected) {
+                    throw new ZipException("Corrupt GZIP header");
+                }
+            }
+        }
+
+        private int readHeaderByte(CRC32 headerCrc) throws IOException {
+            int b = this.readByte();
+            headerCrc.update(b);
+            return b;
+        }
+
+        private int readByte() throws IOException {
+            return this.pending < this.len ? this.buf[this.pending++] & 0xff : readUByte(this.in);
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (!this.eos) {
+                int n = super.read(b, off, len);
+
+                if (n != -1) {
+                    this.crc.update(b, off, n);
+                    return n;
+                }
+
+                this.readTrailer();
+                this.eos = !this.nextMember();
+            }
+
+            return -1;
+        }
+
+        /**
+         * Starts on the member following the one just read, if more input follows its trailer. As in GZIPInputStream,
+         * input after the last member that does not start with a valid header is ignored.
+         */
+        private boolean nextMember() throws IOException {
+            int trailing = this.inf.getRemaining() - 8;
+            this.pending = trailing > 0 ? this.len - trailing : this.len;
+
+            if (trailing <= 0 && this.in.available() <= 0) {
+                return false;
+            }
+
+            try {
+                this.readHeader();
+            } catch (IOException e) {
+                return false;
+            }
+
+            this.inf.reset();
+            this.crc.reset();
+
+            if (this.pending < this.len) {
+                this.inf.setInput(this.buf, this.pending, this.len - this.pending);
+            }
+
+            return true;
+        }
+
+        private void readTrailer() throws IOException {
+            byte[] trailer = new byte[8];
+            int remaining = Math.min(this.inf.getRemaining(), trailer.length);
+            System.arraycopy(this.buf, this.len - this.inf.getRemaining(), trailer, 0, remaining);
+
+            for (int i = remaining; i < trailer.length; ++i) {
+                trailer[i] = (byte) readUByte(this.in);
+            }
+
+            long crc = readIntLE(trailer, 0) & 0xffffffffL;
+            long size = readIntLE(trailer, 4) & 0xffffffffL;
+
+            if (crc != this.crc.getValue() || size != (this.inf.getBytesWritten() & 0xffffffffL)) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+        }
+
+        public int available() throws IOException {
+            return this.eos ? 0 : super.available();
+        }
+
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                this.release();
+            }
+        }
+
+        private void release() {
+            if (!this.released) {
+                this.released = true;
+                this.pool.releaseInflater(this.inf, true);
+                this.pool.releaseBuffer(this.buf);
+            }
+        }
+    }
+
+    static class GzipOutput extends DeflaterOutputStream {
+        private final NBTCompressionPool pool = NBTCompressionPool.get();
+        private final CRC32 crc = new CRC32();
+        private final int level;
+        private boolean released;
+
+        GzipOutput(OutputStream output, int level) throws IOException {
+            super(output, NBTCompressionPool.get().borrowDeflater(level, true), 1);
+            this.buf = this.pool.borrowBuffer();
+            this.level = level;
+            output.write(GZIP_HEADER);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            this.crc.update(b, off, len);
+        }
+
+        public void finish() throws IOException {
+            if (!this.def.finished()) {
+                super.finish();
+                int crc = (int) this.crc.getValue();
+                int size = (int) this.def.getBytesRead();
+                byte[] trailer = new byte[]{
+                        (byte) crc, (byte) (crc >>> 8), (byte) (crc >>> 16), (byte) (crc >>> 24),
+                        (byte) size, (byte) (size >>> 8), (byte) (size >>> 16), (byte) (size >>> 24)
+                };
+                this.out.write(trailer);
+            }
+        }
+
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!this.released) {
+                    this.released = true;
+                    this.pool.releaseDeflater(this.def, this.level, true);
+                    this.pool.releaseBuffer(this.buf);
+                }
+            }
+        }
+    }
+
+    static class ZlibInput extends InflaterInputStream {
+        private final NBTCompressionPool pool = NBTCompressionPool.get();
+        private boolean released;
+
+        ZlibInput(InputStream input) {
+            super(input, NBTCompressionPool.get().borrowInflater(false), 1);
+            this.buf = this.pool.borrowBuffer();
+        }
+
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!this.released) {
+                    this.released = true;
+                    this.pool.releaseInflater(this.inf, false);
+                    this.pool.releaseBuffer(this.buf);
+                }
+            }
+        }
+    }
+
+    static class ZlibOutput extends DeflaterOutputStream {
+        private final NBTCompressionPool pool = NBTCompressionPool.get();
+        private final int level;
+        private boolean released;
+
+        ZlibOutput(OutputStream output, int level) {
+            super(output, NBTCompressionPool.get().borrowDeflater(level, false), 1);
+            this.buf = this.pool.borrowBuffer();
+            this.level = level;
+        }
+
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!this.released) {
+                    this.released = true;
+                    this.pool.releaseDeflater(this.def, this.level, false);
+                    this.pool.releaseBuffer(this.buf);
+                }
+            }
+        }
+    }
+
+    /**
+     * A {@link BufferedInputStream} whose buffer comes from the calling thread's pool.
+     */
+    static class BufferedInput extends BufferedInputStream {
+        private final NBTCompressionPool pool = NBTCompressionPool.get();
+        private byte[] pooled;
+
+        BufferedInput(InputStream input) {
+            super(input, 1);
+            this.buf = this.pooled = this.pool.borrowBuffer();
+        }
+
+        public void close() throws IOException {
+            byte[] buffer = this.pooled;
+            this.pooled = null;
+            super.close();
+
+            if (buffer != null) {
+                this.pool.releaseBuffer(buffer);
+            }
+        }
+    }
+
+    /**
+     * A {@link BufferedOutputStream} whose buffer comes from the calling thread's pool.
+     */
+    static class BufferedOutput extends BufferedOutputStream {
+        private final NBTCompressionPool pool = NBTCompressionPool.get();
+        private byte[] pooled;
+
+        BufferedOutput(OutputStream output) {
+            super(output, 1);
+            this.buf = this.pooled = this.pool.borrowBuffer();
+        }
+
+        public void close() throws IOException {
+            byte[] buffer = this.pooled;
+            this.pooled = null;
+
+            try {
+                super.close();
+            } finally {
+                if (buffer != null) {
+                    this.pool.releaseBuffer(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a sequence of blocks, each prefixed by its uncompressed length and its compressed length (high bit set for
+     * blocks stored uncompressed), terminated by a zero length.
+     */
+    static class LZInput extends InputStream {
+        private final NBTCompressionPool pool = NBTCompressionPool.get();
+        private final InputStream in;
+        private byte[] block;
+        private byte[] compressed;
+        private int position;
+        private int limit;
+        private boolean eos;
+
+        LZInput(InputStream in) {
+            this.in = in;
+            this.block = this.pool.borrowBlock();
+        }
+
+        private boolean fill() throws IOException {
+            if (this.eos) {
+                return false;
+            }
+
+            int length = readInt(this.in);
+
+            if (length == 0) {
+                this.eos = true;
+                return false;
+            }
+
+            int header = readInt(this.in);
+            int compressedLength = header & ~LZ_STORED;
+
+            if (length < 0 || length > LZ_BLOCK_SIZE || compressedLength > LZ_BUFFER_SIZE) {
+                throw new ZipException("Corrupt LZ block header");
+            }
+
+            if ((header & LZ_STORED) != 0) {
+                if (compressedLength != length) {
+                    throw new ZipException("Corrupt LZ block header");
+                }
+
+                readFully(this.in, this.block, length);
+            } else {
+                if (this.compressed == null) {
+                    this.compressed = this.pool.borrowBlock();
+                }
+
+                readFully(this.in, this.compressed, compressedLength);
+
+                if (decompressBlock(this.compressed, compressedLength, this.block, length) != length) {
+                    throw new ZipException("Corrupt LZ block");
+                }
+            }
+
+            this.position = 0;
+            this.limit = length;
+            return true;
+        }
+
+        public int read() throws IOException {
+            if (this.position == this.limit && !this.fill()) {
+                return -1;
+            }
+
+            return this.block[this.position++] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (this.position == this.limit && !this.fill()) {
+                return -1;
+            }
+
+            int n = Math.min(len, this.limit - this.position);
+            System.arraycopy(this.block, this.position, b, off, n);
+            this.position += n;
+            return n;
+        }
+
+        public int available() {
+            return this.limit - this.position;
+        }
+
+        public void close() throws IOException {
+            try {
+                this.in.close();
+            } finally {
+                if (this.block != null) {
+                    this.pool.releaseBlock(this.block);
+                    this.block = null;
+                    this.position = this.limit = 0;
+                    this.eos = true;
+                }
+
+                if (this.compressed != null) {
+                    this.pool.releaseBlock(this.compressed);
+                    this.compressed = null;
+                }
+            }
+        }
+    }
+
+    static class LZOutput extends OutputStream {
+        private final NBTCompressionPool pool = NBTCompressionPool.get();
+        private final OutputStream out;
+        private final byte[] block;
+        private final byte[] compressed;
+        private final int[] table;
+        private int position;
+        private boolean closed;
+
+        LZOutput(OutputStream out) {
+            this.out = out;
+            this.block = this.pool.borrowBlock();
+            this.compressed = this.pool.borrowBlock();
+            this.table = this.pool.borrowTable();
+        }
+
+        public void write(int b) throws IOException {
+            if (this.position == LZ_BLOCK_SIZE) {
+                this.writeBlock();
+            }
+
+            this.block[this.position++] = (byte) b;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (this.position == LZ_BLOCK_SIZE) {
+                    this.writeBlock();
+                }
+
+                int n = Math.min(len, LZ_BLOCK_SIZE - this.position);
+                System.arraycopy(b, off, this.block, this.position, n);
+                this.position += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (this.position == 0) {
+                return;
+            }
+
+            int length = compressBlock(this.block, 0, this.position, this.compressed, this.table);
+            writeInt(this.out, this.position);
+
+            if (length < this.position) {
+                writeInt(this.out, length);
+                this.out.write(this.compressed, 0, length);
+            } else {
+                writeInt(this.out, this.position | LZ_STORED);
+                this.out.write(this.block, 0, this.position);
+            }
+
+            this.position = 0;
+        }
+
+        public void flush() throws IOException {
+            this.writeBlock();
+            this.out.flush();
+        }
+
+        public void close() throws IOException {
+            if (!this.closed) {
+                this.closed = true;
+
+                try {
+                    this.writeBlock();
+                    writeInt(this.out, 0);
+                } finally {
+                    this.out.close();
+                    this.pool.releaseBlock(this.block);
+                    this.pool.releaseBlock(this.compressed);
+                    this.pool.releaseTable(this.table);
+                }
+            }
+        }
+    }
+}
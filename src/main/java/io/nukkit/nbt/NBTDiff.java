@@ -0,0 +1,258 @@
+package io.nukkit.nbt;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Computes binary patches between two compounds and applies them, so that a changed compound can be saved or sent as
+ * the difference to a previous version instead of as a whole.
+ * <p>
+ * A compound patch is a sequence of operations terminated by {@link #OP_END}: {@link #OP_SET} carries a key followed by
+ * a tag id and payload, {@link #OP_REMOVE} a key, {@link #OP_PATCH} a key followed by a nested compound patch and
+ * {@link #OP_PATCH_LIST} a key followed by a list patch. A list patch holds the element type, the new length and a
+ * sequence of element operations, each starting with the element index and terminated by index -1.
+ */
+public class NBTDiff {
+    public static final byte OP_END = 0;
+    public static final byte OP_SET = 1;
+    public static final byte OP_REMOVE = 2;
+    public static final byte OP_PATCH = 3;
+    public static final byte OP_PATCH_LIST = 4;
+
+    /**
+     * Returns the patch turning from into to. Applying it to a compound equal to from yields a compound equal to to.
+     */
+    public static byte[] diff(NBTTagCompound from, NBTTagCompound to) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            writeDiff(from, to, output);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Applies a patch created by {@link #diff} to the given compound in place and returns it. See {@link
+     * #applyDiff(NBTTagCompound, DataInput)}.
+     */
+    public static NBTTagCompound apply(NBTTagCompound target, byte[] patch) throws IOException {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(patch))) {
+            applyDiff(target, input);
+        }
+
+        return target;
+    }
+
+    /**
+     * Returns whether the patch contains no changes.
+     */
+    public static boolean isEmpty(byte[] patch) {
+        return patch.length == 1 && patch[0] == OP_END;
+    }
+
+    public static void writeDiff(NBTTagCompound from, NBTTagCompound to, DataOutput output) throws IOException {
+        for (String key : to.getKeySet()) {
+            NBTTag newTag = to.peek(key);
+            NBTTag oldTag = from.peek(key);
+
+            if (oldTag == null || oldTag.getId() != newTag.getId()) {
+                writeSet(key, newTag, output);
+            } else if (!oldTag.equals(newTag)) {
+                if (newTag.getId() == NBTTag.TAG_COMPOUND) {
+                    output.writeByte(OP_PATCH);
+                    output.writeUTF(key);
+                    writeDiff((NBTTagCompound) oldTag, (NBTTagCompound) newTag, output);
+                } else if (newTag.getId() == NBTTag.TAG_LIST && isPatchable((NBTTagList) oldTag, (NBTTagList) newTag)) {
+                    output.writeByte(OP_PATCH_LIST);
+                    output.writeUTF(key);
+                    writeListDiff((NBTTagList) oldTag, (NBTTagList) newTag, output);
+                } else {
+                    writeSet(key, newTag, output);
+                }
+            }
+        }
+
+        for (String key : from.getKeySet()) {
+            if (!to.hasKey(key)) {
+                output.writeByte(OP_REMOVE);
+                output.writeUTF(key);
+            }
+        }
+
+        output.writeByte(OP_END);
+    }
+
+    /**
+     * Applies a patch to the given compound in place. The patch is applied to a copy that replaces the contents of the
+     * target once it applied cleanly, so a patch that does not match leaves the target unchanged. Tags obtained from the
+     * target through {@link NBTTagCompound#getTag} before are not part of it anymore afterwards.
+     */
+    public static void applyDiff(NBTTagCompound target, DataInput input) throws IOException {
+        NBTTagCompound result = target.copy();
+        applyDiff(result, input, 0);
+        target.assign(result);
+    }
+
+    private static void writeSet(String key, NBTTag tag, DataOutput output) throws IOException {
+        output.writeByte(OP_SET);
+        output.writeUTF(key);
+        output.writeByte(tag.getId());
+        tag.write(output);
+    }
+
+    /**
+     * Element-wise patches only pay off for lists of containers; other lists are replaced as a whole.
+     */
+    private static boolean isPatchable(NBTTagList from, NBTTagList to) {
+        int type = to.getTagType();
+        return from.getTagType() == type && (type == NBTTag.TAG_COMPOUND || type == NBTTag.TAG_LIST);
+    }
+
+    private static void writeListDiff(NBTTagList from, NBTTagList to, DataOutput output) throws IOException {
+        output.writeByte(to.getTagType());
+        output.writeInt(to.tagCount());
+
+        for (int i = 0; i < to.tagCount(); ++i) {
+            NBTTag newTag = to.peek(i);
+
+            if (i >= from.tagCount()) {
+                output.writeInt(i);
+                output.writeByte(OP_SET);
+                newTag.write(output);
+            } else {
+                NBTTag oldTag = from.peek(i);
+
+                if (!oldTag.equals(newTag)) {
+                    output.writeInt(i);
+
+                    if (newTag.getId() == NBTTag.TAG_COMPOUND) {
+                        output.writeByte(OP_PATCH);
+                        writeDiff((NBTTagCompound) oldTag, (NBTTagCompound) newTag, output);
+                    } else if (isPatchable((NBTTagList) oldTag, (NBTTagList) newTag)) {
+                        output.writeByte(OP_PATCH_LIST);
+                        writeListDiff((NBTTagList) oldTag, (NBTTagList) newTag, output);
+                    } else {
+                        output.writeByte(OP_SET);
+                        newTag.write(output);
+                    }
+                }
+            }
+        }
+
+        output.writeInt(-1);
+    }
+
+    private static void applyDiff(NBTTagCompound target, DataInput input, int depth) throws IOException {
+        checkDepth(depth);
+        byte op;
+
+        while ((op = input.readByte()) != OP_END) {
+            String key = input.readUTF();
+
+            switch (op) {
+                case OP_SET:
+                    target.put(key, readTag(input.readByte(), input, depth));
+                    break;
+
+                case OP_REMOVE:
+                    target.removeTag(key);
+                    break;
+
+                case OP_PATCH:
+                    if (target.getTagId(key) != NBTTag.TAG_COMPOUND) {
+                        throw new IOException("Patch does not match base: '" + key + "' is not a compound");
+                    }
+
+                    applyDiff((NBTTagCompound) target.edit(key), input, depth + 1);
+                    break;
+
+                case OP_PATCH_LIST:
+                    if (target.getTagId(key) != NBTTag.TAG_LIST) {
+                        throw new IOException("Patch does not match base: '" + key + "' is not a list");
+                    }
+
+                    applyListDiff((NBTTagList) target.edit(key), input, depth + 1);
+                    break;
+
+                default:
+                    throw new IOException("Unknown patch operation " + op);
+            }
+        }
+    }
+
+    private static void applyListDiff(NBTTagList target, DataInput input, int depth) throws IOException {
+        checkDepth(depth);
+        byte type = input.readByte();
+        int length = input.readInt();
+
+        if (type < 1 || type >= NBTTag.NBT_TYPES.length) {
+            throw new IOException("Invalid list type " + type + " in patch");
+        }
+
+        if (target.getTagType() == 0 && target.tagCount() == 0) {
+            // An emptied list keeps its type in memory but is written without one
+            target.setTagType(type);
+        } else if (target.getTagType() != type) {
+            throw new IOException("Patch does not match base: list of " + NBTTag.NBT_TYPES[target.getTagType()] + " expected " + NBTTag.NBT_TYPES[type]);
+        }
+
+        while (target.tagCount() > length) {
+            target.removeTag(target.tagCount() - 1);
+        }
+
+        int index;
+
+        while ((index = input.readInt()) != -1) {
+            byte op = input.readByte();
+
+            if (index < 0) {
+                throw new IOException("Patch does not match base: list index " + index + " out of bounds");
+            } else if (op == OP_SET) {
+                NBTTag tag = readTag(type, input, depth);
+
+                if (index <= target.tagCount()) {
+                    target.put(index, tag);
+                } else {
+                    throw new IOException("Patch does not match base: list index " + index + " out of bounds");
+                }
+            } else if (index >= target.tagCount()) {
+                throw new IOException("Patch does not match base: list index " + index + " out of bounds");
+            } else if (op == OP_PATCH && type == NBTTag.TAG_COMPOUND) {
+                applyDiff((NBTTagCompound) target.edit(index), input, depth + 1);
+            } else if (op == OP_PATCH_LIST && type == NBTTag.TAG_LIST) {
+                applyListDiff((NBTTagList) target.edit(index), input, depth + 1);
+            } else {
+                throw new IOException("Unknown list patch operation " + op);
+            }
+        }
+
+        if (target.tagCount() != length) {
+            throw new IOException("Patch does not match base: list has " + target.tagCount() + " elements, expected " + length);
+        }
+    }
+
+    private static NBTTag readTag(byte id, DataInput input, int depth) throws IOException {
+        NBTTag tag = NBTTag.createNewByType(id);
+
+        if (tag == null || id == NBTTag.TAG_END) {
+            throw new IOException("Invalid tag type " + id + " in patch");
+        }
+
+        tag.read(input, depth, NBTSizeTracker.INFINITE);
+        return tag;
+    }
+
+    private static void checkDepth(int depth) {
+        if (depth > 512) {
+            throw new RuntimeException("Tried to read NBT patch with too high complexity, depth > 512");
+        }
+    }
+}
@@ -1,7 +1,38 @@
 package io.nukkit.nbt;
 
 public class NBTException extends Exception {
+    private final int cursor;
+
     public NBTException(String message) {
         super(message);
+        this.cursor = -1;
+    }
+
+    /**
+     * Creates an exception for a parse error at the given position, quoting the input up to it.
+     */
+    public NBTException(String message, String json, int cursor) {
+        super(message + " at: " + slice(json, cursor));
+        this.cursor = cursor;
+    }
+
+    private static String slice(String json, int cursor) {
+        StringBuilder stringbuilder = new StringBuilder();
+        int i = Math.min(json.length(), cursor);
+
+        if (i > 35) {
+            stringbuilder.append("...");
+        }
+
+        stringbuilder.append(json, Math.max(0, i - 35), i);
+        stringbuilder.append("<--[HERE]");
+        return stringbuilder.toString();
+    }
+
+    /**
+     * Gets the position in the input at which parsing failed, or -1 if unknown.
+     */
+    public int getCursor() {
+        return this.cursor;
     }
 }
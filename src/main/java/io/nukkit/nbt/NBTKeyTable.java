@@ -0,0 +1,153 @@
+package io.nukkit.nbt;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.Arrays;
+
+/**
+ * Intern table for compound keys. The same few hundred keys repeat across every entity and item, so instead of
+ * decoding a new string per key the reader hashes the raw modified UTF-8 bytes and returns the canonical instance when
+ * they match a cached entry. Cached keys are also interned, so they are the same instances as string literals used to
+ * look them up.
+ * <p>
+ * The table is direct mapped with a fixed number of slots, so it never grows; a colliding key simply replaces the
+ * previous entry. Entries are immutable and published through final fields, which makes the unsynchronized slot reads
+ * and writes safe for concurrent readers.
+ */
+final class NBTKeyTable {
+    private static final int SIZE = 2048;
+    private static final int MAX_KEY_BYTES = 64;
+    private static final Entry[] TABLE = new Entry[SIZE];
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[MAX_KEY_BYTES]);
+
+    private NBTKeyTable() {
+    }
+
+    /**
+     * Reads a string written by DataOutput.writeUTF, returning the canonical instance for short keys.
+     */
+    static String readKey(DataInput input) throws IOException {
+        int length = input.readUnsignedShort();
+
+        if (length > MAX_KEY_BYTES) {
+            byte[] abyte = new byte[length];
+            input.readFully(abyte);
+            return decode(abyte, length);
+        }
+
+        byte[] scratch = SCRATCH.get();
+        input.readFully(scratch, 0, length);
+        int hash = length;
+
+        for (int i = 0; i < length; ++i) {
+            hash = hash * 31 + scratch[i];
+        }
+
+        hash ^= hash >>> 16;
+        int slot = hash & (SIZE - 1);
+        Entry entry = TABLE[slot];
+
+        if (entry != null && entry.hash == hash && entry.matches(scratch, length)) {
+            return entry.key;
+        }
+
+        String key = decode(scratch, length).intern();
+        TABLE[slot] = new Entry(hash, Arrays.copyOf(scratch, length), key);
+        return key;
+    }
+
+    /**
+     * Decodes modified UTF-8 the same way DataInputStream.readUTF does.
+     */
+    private static String decode(byte[] bytes, int length) throws UTFDataFormatException {
+        char[] achar = new char[length];
+        int count = 0;
+        int i = 0;
+
+        while (i < length && bytes[i] >= 0) {
+            achar[count++] = (char) bytes[i++];
+        }
+
+        while (i < length) {
+            int c = bytes[i] & 255;
+
+            switch (c >> 4) {
+                case 0:
+                case 1:
+                case 2:
+                case 3:
+                case 4:
+                case 5:
+                case 6:
+                case 7:
+                    ++i;
+                    achar[count++] = (char) c;
+                    break;
+
+                case 12:
+                case 13:
+                    if (i + 2 > length) {
+                        throw new UTFDataFormatException("malformed input: partial character at end");
+                    }
+
+                    int c2 = bytes[i + 1];
+
+                    if ((c2 & 192) != 128) {
+                        throw new UTFDataFormatException("malformed input around byte " + (i + 1));
+                    }
+
+                    achar[count++] = (char) ((c & 31) << 6 | c2 & 63);
+                    i += 2;
+                    break;
+
+                case 14:
+                    if (i + 3 > length) {
+                        throw new UTFDataFormatException("malformed input: partial character at end");
+                    }
+
+                    int c3 = bytes[i + 1];
+                    int c4 = bytes[i + 2];
+
+                    if ((c3 & 192) != 128 || (c4 & 192) != 128) {
+                        throw new UTFDataFormatException("malformed input around byte " + (i + 2));
+                    }
+
+                    achar[count++] = (char) ((c & 15) << 12 | (c3 & 63) << 6 | c4 & 63);
+                    i += 3;
+                    break;
+
+                default:
+                    throw new UTFDataFormatException("malformed input around byte " + i);
+            }
+        }
+
+        return new String(achar, 0, count);
+    }
+
+    private static class Entry {
+        private final int hash;
+        private final byte[] bytes;
+        private final String key;
+
+        private Entry(int hash, byte[] bytes, String key) {
+            this.hash = hash;
+            this.bytes = bytes;
+            this.key = key;
+        }
+
+        private boolean matches(byte[] scratch, int length) {
+            if (this.bytes.length != length) {
+                return false;
+            }
+
+            for (int i = 0; i < length; ++i) {
+                if (this.bytes[i] != scratch[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,673 @@
+package io.nukkit.nbt;
+
+import com.google.common.collect.Lists;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Backing storage of an {@link NBTTagList}. Lists of numeric tags keep their elements in a primitive array instead of
+ * one tag object per element; all other element types are kept as tags.
+ */
+abstract class NBTListStorage {
+    private static final int DEFAULT_CAPACITY = 4;
+
+    /**
+     * Creates an empty storage suited to elements of the given type.
+     */
+    static NBTListStorage create(byte type, int capacity) {
+        switch (type) {
+            case NBTTag.TAG_BYTE:
+                return new Bytes(capacity);
+
+            case NBTTag.TAG_SHORT:
+                return new Shorts(capacity);
+
+            case NBTTag.TAG_INT:
+                return new Ints(capacity);
+
+            case NBTTag.TAG_LONG:
+                return new Longs(capacity);
+
+            case NBTTag.TAG_FLOAT:
+                return new Floats(capacity);
+
+            case NBTTag.TAG_DOUBLE:
+                return new Doubles(capacity);
+
+            default:
+                return new Tags(capacity);
+        }
+    }
+
+    static int grow(int length, int required) {
+        return Math.max(required, Math.max(DEFAULT_CAPACITY, length + (length >> 1)));
+    }
+
+    abstract int size();
+
+    /**
+     * Returns the element at the given index as a tag. Primitive storages create a new tag for every call.
+     */
+    abstract NBTTag get(int index);
+
+    abstract void add(NBTTag tag);
+
+    abstract void set(int index, NBTTag tag);
+
+    abstract NBTTag remove(int index);
+
+    /**
+     * Reads the given number of elements, replacing the current contents.
+     */
+    abstract void read(DataInput input, byte type, int count, int depth, NBTSizeTracker sizeTracker) throws IOException;
+
+    abstract void write(DataOutput output) throws IOException;
+
+    abstract NBTListStorage copy();
+
+    abstract void appendTo(StringBuilder builder, int index);
+
+    /**
+     * Hash over the elements, equal to the {@link List#hashCode()} of the same elements held as tags.
+     */
+    abstract int contentHash();
+
+    abstract boolean sameContent(NBTListStorage other);
+
+    int getInt(int index) {
+        return ((NBTTagNumber) this.get(index)).getInt();
+    }
+
+    float getFloat(int index) {
+        return ((NBTTagNumber) this.get(index)).getFloat();
+    }
+
+    double getDouble(int index) {
+        return ((NBTTagNumber) this.get(index)).getDouble();
+    }
+
+    boolean contentEquals(NBTListStorage other) {
+        if (this.size() != other.size()) {
+            return false;
+        } else if (this.getClass() == other.getClass()) {
+            return this.sameContent(other);
+        } else {
+            for (int i = 0; i < this.size(); ++i) {
+                if (!this.get(i).equals(other.get(i))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    static class Tags extends NBTListStorage {
+        private List<NBTTag> tags;
+
+        Tags(int capacity) {
+            this.tags = Lists.newArrayListWithCapacity(capacity);
+        }
+
+        int size() {
+            return this.tags.size();
+        }
+
+        NBTTag get(int index) {
+            return this.tags.get(index);
+        }
+
+        void add(NBTTag tag) {
+            this.tags.add(tag);
+        }
+
+        void set(int index, NBTTag tag) {
+            this.tags.set(index, tag);
+        }
+
+        NBTTag remove(int index) {
+            return this.tags.remove(index);
+        }
+
+        void read(DataInput input, byte type, int count, int depth, NBTSizeTracker sizeTracker) throws IOException {
+            // The count comes from the stream and nothing has been charged for the elements yet, so let the list grow
+            this.tags = Lists.newArrayListWithCapacity(Math.min(count, 64));
+
+            for (int i = 0; i < count; ++i) {
+                NBTTag tag = NBTTag.createNewByType(type);
+                tag.read(input, depth, sizeTracker);
+                this.tags.add(tag);
+            }
+        }
+
+        void write(DataOutput output) throws IOException {
+            for (NBTTag tag : this.tags) {
+                tag.write(output);
+            }
+        }
+
+        Tags copy() {
+            Tags copy = new Tags(this.tags.size());
+
+            for (NBTTag tag : this.tags) {
+                copy.tags.add(NBTTag.isMutable(tag.getId()) ? tag.copy() : tag);
+            }
+
+            return copy;
+        }
+
+        void appendTo(StringBuilder builder, int index) {
+            builder.append(this.tags.get(index));
+        }
+
+        int contentHash() {
+            return this.tags.hashCode();
+        }
+
+        boolean sameContent(NBTListStorage other) {
+            return this.tags.equals(((Tags) other).tags);
+        }
+    }
+
+    static class Bytes extends NBTListStorage {
+        private byte[] data;
+        private int size;
+
+        Bytes(int capacity) {
+            this.data = new byte[capacity];
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        NBTTag get(int index) {
+            return new NBTTagByte(this.data[index]);
+        }
+
+        void add(NBTTag tag) {
+            if (this.size == this.data.length) {
+                this.data = Arrays.copyOf(this.data, grow(this.data.length, this.size + 1));
+            }
+
+            this.data[this.size++] = ((NBTTagByte) tag).getByte();
+        }
+
+        void set(int index, NBTTag tag) {
+            this.data[index] = ((NBTTagByte) tag).getByte();
+        }
+
+        NBTTag remove(int index) {
+            NBTTag tag = this.get(index);
+            System.arraycopy(this.data, index + 1, this.data, index, --this.size - index);
+            return tag;
+        }
+
+        int getInt(int index) {
+            return this.data[index];
+        }
+
+        void read(DataInput input, byte type, int count, int depth, NBTSizeTracker sizeTracker) throws IOException {
+            sizeTracker.read(72L * (long) count, (long) count);
+            this.data = new byte[count];
+            input.readFully(this.data);
+            this.size = count;
+        }
+
+        void write(DataOutput output) throws IOException {
+            output.write(this.data, 0, this.size);
+        }
+
+        Bytes copy() {
+            Bytes copy = new Bytes(0);
+            copy.data = Arrays.copyOf(this.data, this.size);
+            copy.size = this.size;
+            return copy;
+        }
+
+        void appendTo(StringBuilder builder, int index) {
+            builder.append(this.data[index]).append('b');
+        }
+
+        int contentHash() {
+            int hash = 1;
+
+            for (int i = 0; i < this.size; ++i) {
+                hash = 31 * hash + (NBTTag.TAG_BYTE ^ this.data[i]);
+            }
+
+            return hash;
+        }
+
+        boolean sameContent(NBTListStorage other) {
+            Bytes bytes = (Bytes) other;
+
+            for (int i = 0; i < this.size; ++i) {
+                if (this.data[i] != bytes.data[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    static class Shorts extends NBTListStorage {
+        private short[] data;
+        private int size;
+
+        Shorts(int capacity) {
+            this.data = new short[capacity];
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        NBTTag get(int index) {
+            return new NBTTagShort(this.data[index]);
+        }
+
+        void add(NBTTag tag) {
+            if (this.size == this.data.length) {
+                this.data = Arrays.copyOf(this.data, grow(this.data.length, this.size + 1));
+            }
+
+            this.data[this.size++] = ((NBTTagShort) tag).getShort();
+        }
+
+        void set(int index, NBTTag tag) {
+            this.data[index] = ((NBTTagShort) tag).getShort();
+        }
+
+        NBTTag remove(int index) {
+            NBTTag tag = this.get(index);
+            System.arraycopy(this.data, index + 1, this.data, index, --this.size - index);
+            return tag;
+        }
+
+        int getInt(int index) {
+            return this.data[index];
+        }
+
+        void read(DataInput input, byte type, int count, int depth, NBTSizeTracker sizeTracker) throws IOException {
+            sizeTracker.read(80L * (long) count, 2L * (long) count);
+            this.data = new short[count];
+            NBTArrayIO.readShorts(input, this.data, count);
+            this.size = count;
+        }
+
+        void write(DataOutput output) throws IOException {
+            NBTArrayIO.writeShorts(output, this.data, this.size);
+        }
+
+        Shorts copy() {
+            Shorts copy = new Shorts(0);
+            copy.data = Arrays.copyOf(this.data, this.size);
+            copy.size = this.size;
+            return copy;
+        }
+
+        void appendTo(StringBuilder builder, int index) {
+            builder.append(this.data[index]).append('s');
+        }
+
+        int contentHash() {
+            int hash = 1;
+
+            for (int i = 0; i < this.size; ++i) {
+                hash = 31 * hash + (NBTTag.TAG_SHORT ^ this.data[i]);
+            }
+
+            return hash;
+        }
+
+        boolean sameContent(NBTListStorage other) {
+            Shorts shorts = (Shorts) other;
+
+            for (int i = 0; i < this.size; ++i) {
+                if (this.data[i] != shorts.data[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    static class Ints extends NBTListStorage {
+        private int[] data;
+        private int size;
+
+        Ints(int capacity) {
+            this.data = new int[capacity];
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        NBTTag get(int index) {
+            return new NBTTagInt(this.data[index]);
+        }
+
+        void add(NBTTag tag) {
+            if (this.size == this.data.length) {
+                this.data = Arrays.copyOf(this.data, grow(this.data.length, this.size + 1));
+            }
+
+            this.data[this.size++] = ((NBTTagInt) tag).getInt();
+        }
+
+        void set(int index, NBTTag tag) {
+            this.data[index] = ((NBTTagInt) tag).getInt();
+        }
+
+        NBTTag remove(int index) {
+            NBTTag tag = this.get(index);
+            System.arraycopy(this.data, index + 1, this.data, index, --this.size - index);
+            return tag;
+        }
+
+        int getInt(int index) {
+            return this.data[index];
+        }
+
+        void read(DataInput input, byte type, int count, int depth, NBTSizeTracker sizeTracker) throws IOException {
+            sizeTracker.read(96L * (long) count, 4L * (long) count);
+            this.data = new int[count];
+            NBTArrayIO.readInts(input, this.data, count);
+            this.size = count;
+        }
+
+        void write(DataOutput output) throws IOException {
+            NBTArrayIO.writeInts(output, this.data, this.size);
+        }
+
+        Ints copy() {
+            Ints copy = new Ints(0);
+            copy.data = Arrays.copyOf(this.data, this.size);
+            copy.size = this.size;
+            return copy;
+        }
+
+        void appendTo(StringBuilder builder, int index) {
+            builder.append(this.data[index]);
+        }
+
+        int contentHash() {
+            int hash = 1;
+
+            for (int i = 0; i < this.size; ++i) {
+                hash = 31 * hash + (NBTTag.TAG_INT ^ this.data[i]);
+            }
+
+            return hash;
+        }
+
+        boolean sameContent(NBTListStorage other) {
+            Ints ints = (Ints) other;
+
+            for (int i = 0; i < this.size; ++i) {
+                if (this.data[i] != ints.data[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    static class Longs extends NBTListStorage {
+        private long[] data;
+        private int size;
+
+        Longs(int capacity) {
+            this.data = new long[capacity];
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        NBTTag get(int index) {
+            return new NBTTagLong(this.data[index]);
+        }
+
+        void add(NBTTag tag) {
+            if (this.size == this.data.length) {
+                this.data = Arrays.copyOf(this.data, grow(this.data.length, this.size + 1));
+            }
+
+            this.data[this.size++] = ((NBTTagLong) tag).getLong();
+        }
+
+        void set(int index, NBTTag tag) {
+            this.data[index] = ((NBTTagLong) tag).getLong();
+        }
+
+        NBTTag remove(int index) {
+            NBTTag tag = this.get(index);
+            System.arraycopy(this.data, index + 1, this.data, index, --this.size - index);
+            return tag;
+        }
+
+        void read(DataInput input, byte type, int count, int depth, NBTSizeTracker sizeTracker) throws IOException {
+            sizeTracker.read(128L * (long) count, 8L * (long) count);
+            this.data = new long[count];
+            NBTArrayIO.readLongs(input, this.data, count);
+            this.size = count;
+        }
+
+        void write(DataOutput output) throws IOException {
+            NBTArrayIO.writeLongs(output, this.data, this.size);
+        }
+
+        Longs copy() {
+            Longs copy = new Longs(0);
+            copy.data = Arrays.copyOf(this.data, this.size);
+            copy.size = this.size;
+            return copy;
+        }
+
+        void appendTo(StringBuilder builder, int index) {
+            builder.append(this.data[index]).append('L');
+        }
+
+        int contentHash() {
+            int hash = 1;
+
+            for (int i = 0; i < this.size; ++i) {
+                long value = this.data[i];
+                hash = 31 * hash + (NBTTag.TAG_LONG ^ (int) (value ^ value >>> 32));
+            }
+
+            return hash;
+        }
+
+        boolean sameContent(NBTListStorage other) {
+            Longs longs = (Longs) other;
+
+            for (int i = 0; i < this.size; ++i) {
+                if (this.data[i] != longs.data[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    static class Floats extends NBTListStorage {
+        private float[] data;
+        private int size;
+
+        Floats(int capacity) {
+            this.data = new float[capacity];
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        NBTTag get(int index) {
+            return new NBTTagFloat(this.data[index]);
+        }
+
+        void add(NBTTag tag) {
+            if (this.size == this.data.length) {
+                this.data = Arrays.copyOf(this.data, grow(this.data.length, this.size + 1));
+            }
+
+            this.data[this.size++] = ((NBTTagFloat) tag).getFloat();
+        }
+
+        void set(int index, NBTTag tag) {
+            this.data[index] = ((NBTTagFloat) tag).getFloat();
+        }
+
+        NBTTag remove(int index) {
+            NBTTag tag = this.get(index);
+            System.arraycopy(this.data, index + 1, this.data, index, --this.size - index);
+            return tag;
+        }
+
+        float getFloat(int index) {
+            return this.data[index];
+        }
+
+        void read(DataInput input, byte type, int count, int depth, NBTSizeTracker sizeTracker) throws IOException {
+            sizeTracker.read(96L * (long) count, 4L * (long) count);
+            this.data = new float[count];
+            NBTArrayIO.readFloats(input, this.data, count);
+            this.size = count;
+        }
+
+        void write(DataOutput output) throws IOException {
+            NBTArrayIO.writeFloats(output, this.data, this.size);
+        }
+
+        Floats copy() {
+            Floats copy = new Floats(0);
+            copy.data = Arrays.copyOf(this.data, this.size);
+            copy.size = this.size;
+            return copy;
+        }
+
+        void appendTo(StringBuilder builder, int index) {
+            builder.append(this.data[index]).append('f');
+        }
+
+        int contentHash() {
+            int hash = 1;
+
+            for (int i = 0; i < this.size; ++i) {
+                // Matches NBTTagFloat, which hashes -0.0 like 0.0
+                hash = 31 * hash + (NBTTag.TAG_FLOAT ^ (this.data[i] == 0.0F ? 0 : Float.floatToIntBits(this.data[i])));
+            }
+
+            return hash;
+        }
+
+        boolean sameContent(NBTListStorage other) {
+            Floats floats = (Floats) other;
+
+            for (int i = 0; i < this.size; ++i) {
+                if (this.data[i] != floats.data[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    static class Doubles extends NBTListStorage {
+        private double[] data;
+        private int size;
+
+        Doubles(int capacity) {
+            this.data = new double[capacity];
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        NBTTag get(int index) {
+            return new NBTTagDouble(this.data[index]);
+        }
+
+        void add(NBTTag tag) {
+            if (this.size == this.data.length) {
+                this.data = Arrays.copyOf(this.data, grow(this.data.length, this.size + 1));
+            }
+
+            this.data[this.size++] = ((NBTTagDouble) tag).getDouble();
+        }
+
+        void set(int index, NBTTag tag) {
+            this.data[index] = ((NBTTagDouble) tag).getDouble();
+        }
+
+        NBTTag remove(int index) {
+            NBTTag tag = this.get(index);
+            System.arraycopy(this.data, index + 1, this.data, index, --this.size - index);
+            return tag;
+        }
+
+        double getDouble(int index) {
+            return this.data[index];
+        }
+
+        void read(DataInput input, byte type, int count, int depth, NBTSizeTracker sizeTracker) throws IOException {
+            sizeTracker.read(128L * (long) count, 8L * (long) count);
+            this.data = new double[count];
+            NBTArrayIO.readDoubles(input, this.data, count);
+            this.size = count;
+        }
+
+        void write(DataOutput output) throws IOException {
+            NBTArrayIO.writeDoubles(output, this.data, this.size);
+        }
+
+        Doubles copy() {
+            Doubles copy = new Doubles(0);
+            copy.data = Arrays.copyOf(this.data, this.size);
+            copy.size = this.size;
+            return copy;
+        }
+
+        void appendTo(StringBuilder builder, int index) {
+            builder.append(this.data[index]).append('d');
+        }
+
+        int contentHash() {
+            int hash = 1;
+
+            for (int i = 0; i < this.size; ++i) {
+                // Matches NBTTagDouble, which hashes -0.0 like 0.0
+                long bits = this.data[i] == 0.0D ? 0L : Double.doubleToLongBits(this.data[i]);
+                hash = 31 * hash + (NBTTag.TAG_DOUBLE ^ (int) (bits ^ bits >>> 32));
+            }
+
+            return hash;
+        }
+
+        boolean sameContent(NBTListStorage other) {
+            Doubles doubles = (Doubles) other;
+
+            for (int i = 0; i < this.size; ++i) {
+                if (this.data[i] != doubles.data[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
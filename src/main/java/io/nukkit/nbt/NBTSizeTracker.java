@@ -1,25 +1,233 @@
 package io.nukkit.nbt;
 
-public class NBTSizeTracker {
-    public static final NBTSizeTracker INFINITE = new NBTSizeTracker(0L) {
-        public void read(long bits) {
-        }
-    };
+/**
+ * Limits the size of NBT read from untrusted streams. A tracker either limits the classic estimate, counted in the bits
+ * passed by the tag readers, or the exact number of bytes consumed from the stream. {@link #INFINITE} does no work at
+ * all: the class is final and the enabled check is a single final field read that the JIT folds into the callers.
+ * <p>
+ * {@link #estimateRetainedHeap} reports the heap a tag tree occupies once read.
+ */
+public final class NBTSizeTracker {
+    public static final NBTSizeTracker INFINITE = new NBTSizeTracker(Long.MAX_VALUE, false, false);
     private final long max;
+    private final boolean enabled;
+    /**
+     * Whether the limit applies to the bytes consumed from the stream rather than to the estimate.
+     */
+    private final boolean streamBytes;
     private long read;
 
+    /**
+     * Creates a tracker limiting the estimated size of the read tags to max bytes.
+     */
     public NBTSizeTracker(long max) {
+        this(max, true, false);
+    }
+
+    private NBTSizeTracker(long max, boolean enabled, boolean streamBytes) {
         this.max = max;
+        this.enabled = enabled;
+        this.streamBytes = streamBytes;
+    }
+
+    /**
+     * Creates a tracker limiting the number of bytes consumed from the stream to max. Lengths of arrays are checked
+     * against the limit before the array is allocated.
+     */
+    public static NBTSizeTracker ofStreamBytes(long max) {
+        return new NBTSizeTracker(max, true, true);
+    }
+
+    /**
+     * Creates a tracker without limit that counts the bytes consumed from the stream, see {@link #getRead()}.
+     */
+    public static NBTSizeTracker countingStreamBytes() {
+        return new NBTSizeTracker(Long.MAX_VALUE, true, true);
     }
 
     /**
-     * Tracks the reading of the given amount of bits(!)
+     * Tracks the reading of the given amount of bits(!) of the estimate.
      */
     public void read(long bits) {
-        this.read += bits / 8L;
+        if (this.enabled && !this.streamBytes) {
+            this.account(bits / 8L);
+        }
+    }
+
+    /**
+     * Tracks the reading of a part of a tag, given both as bits of the estimate and as bytes consumed from the stream.
+     */
+    void read(long bits, long bytes) {
+        if (this.enabled) {
+            this.account(this.streamBytes ? bytes : bits / 8L);
+        }
+    }
+
+    /**
+     * Tracks the reading of a string, in addition to the given amounts for the surrounding data.
+     */
+    void readUTF(long bits, long bytes, String s) {
+        if (this.enabled) {
+            this.account(this.streamBytes ? bytes + 2L + utfLength(s) : (bits + 16L * (long) s.length()) / 8L);
+        }
+    }
+
+    /**
+     * Gets the number of bytes tracked so far, either estimated or consumed from the stream.
+     */
+    public long getRead() {
+        return this.read;
+    }
+
+    private void account(long bytes) {
+        this.read += bytes;
 
         if (this.read > this.max) {
             throw new RuntimeException("Tried to read NBT tag that was too big; tried to allocate: " + this.read + "bytes where max allowed: " + this.max);
         }
     }
+
+    /**
+     * Gets the length of the given string in modified UTF-8, as written by DataOutput.writeUTF.
+     */
+    static int utfLength(String s) {
+        int length = s.length();
+
+        for (int i = 0; i < s.length(); ++i) {
+            char c0 = s.charAt(i);
+
+            if (c0 >= 0x800) {
+                length += 2;
+            } else if (c0 >= 0x80 || c0 == 0) {
+                ++length;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Estimates the heap retained by the given tag and everything below it, assuming a 64 bit JVM with compressed
+     * object pointers. Maps and storages shared between copies are counted for every tag referencing them.
+     */
+    public static long estimateRetainedHeap(NBTTag tag) {
+        return estimate(tag, null);
+    }
+
+    /**
+     * Like {@link #estimateRetainedHeap}, broken down by tag type. The returned array is indexed by tag id.
+     */
+    public static long[] estimateRetainedHeapByType(NBTTag tag) {
+        long[] byType = new long[NBTTag.NBT_TYPES.length];
+        estimate(tag, byType);
+        return byType;
+    }
+
+    private static long estimate(NBTTag tag, long[] byType) {
+        byte id = tag.getId();
+        long size;
+        long children = 0L;
+
+        switch (id) {
+            case NBTTag.TAG_BYTE:
+            case NBTTag.TAG_SHORT:
+            case NBTTag.TAG_INT:
+            case NBTTag.TAG_FLOAT:
+                size = 16L;
+                break;
+
+            case NBTTag.TAG_LONG:
+            case NBTTag.TAG_DOUBLE:
+                size = 24L;
+                break;
+
+            case NBTTag.TAG_BYTE_ARRAY:
+                size = 16L + array(((NBTTagByteArray) tag).getByteArray().length, 1);
+                break;
+
+            case NBTTag.TAG_STRING:
+                size = 16L + string(tag.getString());
+                break;
+
+            case NBTTag.TAG_LIST:
+                NBTTagList list = (NBTTagList) tag;
+                int count = list.tagCount();
+                size = 24L;
+
+                switch (list.getTagType()) {
+                    case NBTTag.TAG_BYTE:
+                        size += 24L + array(count, 1);
+                        break;
+
+                    case NBTTag.TAG_SHORT:
+                        size += 24L + array(count, 2);
+                        break;
+
+                    case NBTTag.TAG_INT:
+                    case NBTTag.TAG_FLOAT:
+                        size += 24L + array(count, 4);
+                        break;
+
+                    case NBTTag.TAG_LONG:
+                    case NBTTag.TAG_DOUBLE:
+                        size += 24L + array(count, 8);
+                        break;
+
+                    default:
+                        size += 16L + 24L + array(count, 4);
+
+                        for (int i = 0; i < count; ++i) {
+                            children += estimate(list.peek(i), byType);
+                        }
+                }
+
+                break;
+
+            case NBTTag.TAG_COMPOUND:
+                NBTTagCompound compound = (NBTTagCompound) tag;
+                int entries = compound.getSize();
+                size = 32L + 48L + (entries == 0 ? 0L : array(tableSize(entries), 4)) + 32L * (long) entries;
+
+                for (String s : compound.getKeySet()) {
+                    size += string(s);
+                    children += estimate(compound.peek(s), byType);
+                }
+
+                break;
+
+            case NBTTag.TAG_INT_ARRAY:
+                size = 16L + array(((NBTTagIntArray) tag).getIntArray().length, 4);
+                break;
+
+            case NBTTag.TAG_LONG_ARRAY:
+                size = 16L + array(((NBTTagLongArray) tag).getLongArray().length, 8);
+                break;
+
+            default:
+                size = 16L;
+        }
+
+        if (byType != null) {
+            byType[id] += size;
+        }
+
+        return size + children;
+    }
+
+    private static long array(int length, int elementSize) {
+        return align(16L + (long) length * (long) elementSize);
+    }
+
+    private static long string(String s) {
+        return 24L + array(s.length(), 2);
+    }
+
+    private static int tableSize(int entries) {
+        int capacity = (int) ((float) entries / 0.75F + 1.0F);
+        return capacity <= 16 ? 16 : Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    private static long align(long size) {
+        return size + 7L & ~7L;
+    }
 }
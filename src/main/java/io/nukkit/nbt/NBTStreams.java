@@ -1,17 +1,22 @@
 package io.nukkit.nbt;
 
 import java.io.*;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 public class NBTStreams {
     /**
      * Load the gzipped compound from the inputstream.
      */
     public static NBTTagCompound readCompressed(InputStream is) throws IOException {
+        return readCompressed(is, NBTCompression.GZIP);
+    }
+
+    /**
+     * Load a compound compressed with the given codec from the inputstream.
+     */
+    public static NBTTagCompound readCompressed(InputStream is, NBTCompression compression) throws IOException {
         NBTTagCompound nbttagcompound;
 
-        try (DataInputStream datainputstream = new DataInputStream(new BufferedInputStream(new GZIPInputStream(is)))) {
+        try (DataInputStream datainputstream = new DataInputStream(new NBTCompressionStreams.BufferedInput(compression.decompress(is)))) {
             nbttagcompound = read(datainputstream, NBTSizeTracker.INFINITE);
         }
 
@@ -22,8 +27,14 @@ public class NBTStreams {
      * Write the compound, gzipped, to the outputstream.
      */
     public static void writeCompressed(NBTTagCompound compound, OutputStream outputStream) throws IOException {
+        writeCompressed(compound, outputStream, NBTCompression.GZIP);
+    }
 
-        try (DataOutputStream dataoutputstream = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(outputStream)))) {
+    /**
+     * Write the compound, compressed with the given codec, to the outputstream.
+     */
+    public static void writeCompressed(NBTTagCompound compound, OutputStream outputStream, NBTCompression compression) throws IOException {
+        try (DataOutputStream dataoutputstream = new DataOutputStream(new NBTCompressionStreams.BufferedOutput(compression.compress(outputStream)))) {
             write(compound, dataoutputstream);
         }
     }
@@ -63,11 +74,12 @@ public class NBTStreams {
 
     private static NBTTag read(DataInput input, int depth, NBTSizeTracker accounter) throws IOException {
         byte tagId = input.readByte();
+        accounter.read(0L, 1L);
 
         if (tagId == NBTTag.TAG_END) {
             return new NBTTagEnd();
         } else {
-            input.readUTF();
+            accounter.readUTF(0L, 0L, input.readUTF());
             NBTTag tag = NBTTag.createNewByType(tagId);
 
             tag.read(input, depth, accounter);
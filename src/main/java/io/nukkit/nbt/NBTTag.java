@@ -5,7 +5,7 @@ import java.io.DataOutput;
 import java.io.IOException;
 
 public abstract class NBTTag {
-    public static final String[] NBT_TYPES = new String[]{"END", "BYTE", "SHORT", "INT", "LONG", "FLOAT", "DOUBLE", "BYTE[]", "STRING", "LIST", "COMPOUND", "INT[]"};
+    public static final String[] NBT_TYPES = new String[]{"END", "BYTE", "SHORT", "INT", "LONG", "FLOAT", "DOUBLE", "BYTE[]", "STRING", "LIST", "COMPOUND", "INT[]", "LONG[]"};
 
     public static final byte TAG_END = 0;
     public static final byte TAG_BYTE = 1;
@@ -19,6 +19,7 @@ public abstract class NBTTag {
     public static final byte TAG_LIST = 9;
     public static final byte TAG_COMPOUND = 10;
     public static final byte TAG_INT_ARRAY = 11;
+    public static final byte TAG_LONG_ARRAY = 12;
 
     /**
      * Creates a new NBTTag object that corresponds with the passed in id.
@@ -61,11 +62,22 @@ public abstract class NBTTag {
             case TAG_INT_ARRAY:
                 return new NBTTagIntArray();
 
+            case TAG_LONG_ARRAY:
+                return new NBTTagLongArray();
+
             default:
                 return null;
         }
     }
 
+    /**
+     * Returns whether tags of the given type can change after creation, either through their own methods or through
+     * an array they hand out. Copies can only share such tags until one side is changed.
+     */
+    static boolean isMutable(byte id) {
+        return id == TAG_BYTE_ARRAY || id == TAG_LIST || id == TAG_COMPOUND || id == TAG_INT_ARRAY || id == TAG_LONG_ARRAY;
+    }
+
     /**
      * Write the actual data contents of the tag, implemented in NBT extension classes
      */
@@ -25,7 +25,7 @@ public class NBTTagByte extends NBTTagNumber {
     }
 
     void read(DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
-        sizeTracker.read(72L);
+        sizeTracker.read(72L, 1L);
         this.data = input.readByte();
     }
 
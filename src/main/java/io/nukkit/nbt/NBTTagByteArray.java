@@ -27,9 +27,9 @@ public class NBTTagByteArray extends NBTTag {
     }
 
     void read(DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
-        sizeTracker.read(192L);
+        sizeTracker.read(192L, 4L);
         int i = input.readInt();
-        sizeTracker.read((long) (8 * i));
+        sizeTracker.read(8L * (long) i, (long) i);
         this.data = new byte[i];
         input.readFully(this.data);
     }
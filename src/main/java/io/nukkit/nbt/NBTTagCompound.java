@@ -1,18 +1,43 @@
 package io.nukkit.nbt;
 
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 
 import javax.annotation.Nullable;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
 
+/**
+ * A compound of named tags. {@link #copy()} is O(1): the copy shares the map and its children with this compound until
+ * either side is changed, at which point that side clones the map and copies its mutable children. Compound and list
+ * children copy in O(1), but byte, int and long array children are copied in full, so this costs the total length of
+ * the arrays held directly in the compound. Children handed out to callers stay live as before, so once that happened
+ * copies take fresh copies of the direct children instead of sharing the map.
+ */
 public class NBTTagCompound extends NBTTag {
-    private final Map<String, NBTTag> tagMap = Maps.newHashMap();
+    private Map<String, NBTTag> tagMap = Maps.newHashMap();
+    /**
+     * Whether tagMap is shared with copies of this compound and has to be cloned before it is changed.
+     */
+    private boolean shared;
+    /**
+     * Whether a mutable child may be referenced from outside this compound.
+     */
+    private boolean exposed;
+    /**
+     * The cached hash code. It is only trusted while no mutable child is exposed, since such children can change
+     * without this compound noticing; their own cached hashes still keep recomputing cheap.
+     */
+    private int hash;
+    private boolean hashed;
+    private Set<String> keySet;
 
     private static void writeEntry(String name, NBTTag data, DataOutput output) throws IOException {
         output.writeByte(data.getId());
@@ -28,7 +53,7 @@ public class NBTTagCompound extends NBTTag {
     }
 
     private static String readKey(DataInput input, NBTSizeTracker sizeTracker) throws IOException {
-        return input.readUTF();
+        return NBTKeyTable.readKey(input);
     }
 
     static NBTTag readNBT(byte id, String key, DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
@@ -51,28 +76,43 @@ public class NBTTagCompound extends NBTTag {
     }
 
     void read(DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
-        sizeTracker.read(384L);
+        sizeTracker.read(384L, 1L);
 
         if (depth > 512) {
             throw new RuntimeException("Tried to read NBT tag with too high complexity, depth > 512");
         } else {
-            this.tagMap.clear();
+            if (this.shared) {
+                this.tagMap = Maps.newHashMap();
+                this.shared = false;
+            } else {
+                this.tagMap.clear();
+            }
+
+            this.exposed = false;
+            this.hashed = false;
             byte b0;
 
             while ((b0 = readType(input, sizeTracker)) != 0) {
                 String s = readKey(input, sizeTracker);
-                sizeTracker.read((long) (224 + 16 * s.length()));
+                sizeTracker.readUTF(224L, 1L, s);
                 NBTTag tag = readNBT(b0, s, input, depth + 1, sizeTracker);
 
                 if (this.tagMap.put(s, tag) != null) {
-                    sizeTracker.read(288L);
+                    sizeTracker.read(288L, 0L);
                 }
             }
         }
     }
 
+    /**
+     * Gets a read-only view of the keys of this compound.
+     */
     public Set<String> getKeySet() {
-        return this.tagMap.keySet();
+        if (this.keySet == null) {
+            this.keySet = new KeySet();
+        }
+
+        return this.keySet;
     }
 
     /**
@@ -90,35 +130,39 @@ public class NBTTagCompound extends NBTTag {
      * Stores the given tag into the map with the given string key. This is mostly used to store tag lists.
      */
     public void setTag(String key, NBTTag value) {
-        this.tagMap.put(key, value);
+        this.put(key, value);
+
+        if (isMutable(value.getId())) {
+            this.exposed = true;
+        }
     }
 
     /**
      * Stores a new NBTTagByte with the given byte value into the map with the given string key.
      */
     public void setByte(String key, byte value) {
-        this.tagMap.put(key, new NBTTagByte(value));
+        this.put(key, new NBTTagByte(value));
     }
 
     /**
      * Stores a new NBTTagShort with the given short value into the map with the given string key.
      */
     public void setShort(String key, short value) {
-        this.tagMap.put(key, new NBTTagShort(value));
+        this.put(key, new NBTTagShort(value));
     }
 
     /**
      * Stores a new NBTTagInt with the given integer value into the map with the given string key.
      */
     public void setInteger(String key, int value) {
-        this.tagMap.put(key, new NBTTagInt(value));
+        this.put(key, new NBTTagInt(value));
     }
 
     /**
      * Stores a new NBTTagLong with the given long value into the map with the given string key.
      */
     public void setLong(String key, long value) {
-        this.tagMap.put(key, new NBTTagLong(value));
+        this.put(key, new NBTTagLong(value));
     }
 
     public void setUniqueId(String key, UUID value) {
@@ -139,35 +183,42 @@ public class NBTTagCompound extends NBTTag {
      * Stores a new NBTTagFloat with the given float value into the map with the given string key.
      */
     public void setFloat(String key, float value) {
-        this.tagMap.put(key, new NBTTagFloat(value));
+        this.put(key, new NBTTagFloat(value));
     }
 
     /**
      * Stores a new NBTTagDouble with the given double value into the map with the given string key.
      */
     public void setDouble(String key, double value) {
-        this.tagMap.put(key, new NBTTagDouble(value));
+        this.put(key, new NBTTagDouble(value));
     }
 
     /**
      * Stores a new NBTTagString with the given string value into the map with the given string key.
      */
     public void setString(String key, String value) {
-        this.tagMap.put(key, new NBTTagString(value));
+        this.put(key, new NBTTagString(value));
     }
 
     /**
      * Stores a new NBTTagByteArray with the given array as data into the map with the given string key.
      */
     public void setByteArray(String key, byte[] value) {
-        this.tagMap.put(key, new NBTTagByteArray(value));
+        this.setTag(key, new NBTTagByteArray(value));
     }
 
     /**
      * Stores a new NBTTagIntArray with the given array as data into the map with the given string key.
      */
     public void setIntArray(String key, int[] value) {
-        this.tagMap.put(key, new NBTTagIntArray(value));
+        this.setTag(key, new NBTTagIntArray(value));
+    }
+
+    /**
+     * Stores a new NBTTagLongArray with the given array as data into the map with the given string key.
+     */
+    public void setLongArray(String key, long[] value) {
+        this.setTag(key, new NBTTagLongArray(value));
     }
 
     /**
@@ -181,6 +232,13 @@ public class NBTTagCompound extends NBTTag {
      * gets a generic tag with the specified name
      */
     public NBTTag getTag(String key) {
+        return this.expose(key);
+    }
+
+    /**
+     * Gets a tag without handing it out, for read-only use inside the package.
+     */
+    NBTTag peek(String key) {
         return this.tagMap.get(key);
     }
 
@@ -312,7 +370,7 @@ public class NBTTagCompound extends NBTTag {
      */
     public byte[] getByteArray(String key) {
         if (this.hasKey(key, 7)) {
-            return ((NBTTagByteArray) this.tagMap.get(key)).getByteArray();
+            return ((NBTTagByteArray) this.expose(key)).getByteArray();
         }
 
         return new byte[0];
@@ -323,19 +381,30 @@ public class NBTTagCompound extends NBTTag {
      */
     public int[] getIntArray(String key) {
         if (this.hasKey(key, 11)) {
-            return ((NBTTagIntArray) this.tagMap.get(key)).getIntArray();
+            return ((NBTTagIntArray) this.expose(key)).getIntArray();
         }
 
         return new int[0];
     }
 
+    /**
+     * Retrieves a long array using the specified key, or a zero-length array if no such key was stored.
+     */
+    public long[] getLongArray(String key) {
+        if (this.hasKey(key, 12)) {
+            return ((NBTTagLongArray) this.expose(key)).getLongArray();
+        }
+
+        return new long[0];
+    }
+
     /**
      * Retrieves a NBTTagCompound subtag matching the specified key, or a new empty NBTTagCompound if no such key was
      * stored.
      */
     public NBTTagCompound getCompoundTag(String key) {
         if (this.hasKey(key, 10)) {
-            return (NBTTagCompound) this.tagMap.get(key);
+            return (NBTTagCompound) this.expose(key);
         }
 
         return new NBTTagCompound();
@@ -352,7 +421,7 @@ public class NBTTagCompound extends NBTTag {
                 return new NBTTagList();
             }
 
-            return nbttaglist;
+            return (NBTTagList) this.expose(key);
         }
 
         return new NBTTagList();
@@ -370,6 +439,8 @@ public class NBTTagCompound extends NBTTag {
      * Remove the specified tag.
      */
     public void removeTag(String key) {
+        this.detach();
+        this.hashed = false;
         this.tagMap.remove(key);
     }
 
@@ -400,16 +471,34 @@ public class NBTTagCompound extends NBTTag {
     public NBTTagCompound copy() {
         NBTTagCompound nbttagcompound = new NBTTagCompound();
 
-        for (String s : this.tagMap.keySet()) {
-            nbttagcompound.setTag(s, this.tagMap.get(s).copy());
+        if (this.exposed) {
+            nbttagcompound.tagMap = this.copyChildren();
+        } else {
+            nbttagcompound.tagMap = this.tagMap;
+            nbttagcompound.shared = true;
+            this.shared = true;
+        }
+
+        if (this.hashed && !this.exposed) {
+            nbttagcompound.hash = this.hash;
+            nbttagcompound.hashed = true;
         }
 
         return nbttagcompound;
     }
 
     public boolean equals(Object obj) {
-        if (super.equals(obj)) {
+        if (this == obj) {
+            return true;
+        } else if (super.equals(obj)) {
             NBTTagCompound nbttagcompound = (NBTTagCompound) obj;
+
+            if (this.tagMap == nbttagcompound.tagMap) {
+                return true;
+            } else if (!this.exposed && !nbttagcompound.exposed && this.hashCode() != nbttagcompound.hashCode()) {
+                return false;
+            }
+
             return this.tagMap.entrySet().equals(nbttagcompound.tagMap.entrySet());
         } else {
             return false;
@@ -417,7 +506,12 @@ public class NBTTagCompound extends NBTTag {
     }
 
     public int hashCode() {
-        return super.hashCode() ^ this.tagMap.hashCode();
+        if (!this.hashed || this.exposed) {
+            this.hash = super.hashCode() ^ this.tagMap.hashCode();
+            this.hashed = true;
+        }
+
+        return this.hash;
     }
 
     /**
@@ -430,14 +524,100 @@ public class NBTTagCompound extends NBTTag {
 
             if (tag.getId() == 10) {
                 if (this.hasKey(s, 10)) {
-                    NBTTagCompound nbttagcompound = this.getCompoundTag(s);
+                    this.detach();
+                    this.hashed = false;
+                    NBTTagCompound nbttagcompound = (NBTTagCompound) this.tagMap.get(s);
                     nbttagcompound.merge((NBTTagCompound) tag);
                 } else {
-                    this.setTag(s, tag.copy());
+                    this.put(s, tag.copy());
                 }
             } else {
-                this.setTag(s, tag.copy());
+                this.put(s, tag.copy());
             }
         }
     }
+
+    /**
+     * Stores a tag that is not referenced from outside the compound, so copies may keep sharing it.
+     */
+    void put(String key, NBTTag value) {
+        this.detach();
+        this.hashed = false;
+        this.tagMap.put(key, value);
+    }
+
+    /**
+     * Gets a child to change in place inside the package. Unlike {@link #getTag} this keeps the child private, so copies
+     * can go on sharing this compound and its hash stays cached once recomputed.
+     */
+    NBTTag edit(String key) {
+        this.detach();
+        this.hashed = false;
+        return this.tagMap.get(key);
+    }
+
+    /**
+     * Takes over the tags of the given compound, which must not be used afterwards.
+     */
+    void assign(NBTTagCompound other) {
+        this.tagMap = other.tagMap;
+        this.shared = other.shared;
+        this.exposed = other.exposed;
+        this.hash = other.hash;
+        this.hashed = other.hashed;
+    }
+
+    /**
+     * Gets a tag that the caller may change or keep, making sure it is no longer shared with a copy.
+     */
+    private NBTTag expose(String key) {
+        NBTTag tag = this.tagMap.get(key);
+
+        if (tag != null && isMutable(tag.getId())) {
+            this.detach();
+            tag = this.tagMap.get(key);
+            this.exposed = true;
+        }
+
+        return tag;
+    }
+
+    /**
+     * Takes a private copy of a map shared with copies of this compound.
+     */
+    private void detach() {
+        if (this.shared) {
+            this.tagMap = this.copyChildren();
+            this.shared = false;
+        }
+    }
+
+    /**
+     * Clones the map, copying mutable children. Compound and list children copy in O(1), so apart from the contents of
+     * array children this is linear in the number of direct children only.
+     */
+    private Map<String, NBTTag> copyChildren() {
+        Map<String, NBTTag> map = Maps.newHashMapWithExpectedSize(this.tagMap.size());
+
+        for (Entry<String, NBTTag> entry : this.tagMap.entrySet()) {
+            NBTTag tag = entry.getValue();
+            map.put(entry.getKey(), isMutable(tag.getId()) ? tag.copy() : tag);
+        }
+
+        return map;
+    }
+
+    private class KeySet extends AbstractSet<String> {
+        public Iterator<String> iterator() {
+            return Iterators.unmodifiableIterator(NBTTagCompound.this.tagMap.keySet().iterator());
+        }
+
+        public int size() {
+            return NBTTagCompound.this.tagMap.size();
+        }
+
+        public boolean contains(Object o) {
+            return NBTTagCompound.this.tagMap.containsKey(o);
+        }
+    }
 }
@@ -25,7 +25,7 @@ public class NBTTagDouble extends NBTTagNumber {
     }
 
     void read(DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
-        sizeTracker.read(128L);
+        sizeTracker.read(128L, 8L);
         this.data = input.readDouble();
     }
 
@@ -56,8 +56,11 @@ public class NBTTagDouble extends NBTTagNumber {
         }
     }
 
+    /**
+     * Hashes -0.0 like 0.0, which {@link #equals} treats as equal.
+     */
     public int hashCode() {
-        long i = Double.doubleToLongBits(this.data);
+        long i = this.data == 0.0D ? 0L : Double.doubleToLongBits(this.data);
         return super.hashCode() ^ (int) (i ^ i >>> 32);
     }
 
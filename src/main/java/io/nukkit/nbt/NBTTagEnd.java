@@ -6,7 +6,7 @@ import java.io.IOException;
 
 public class NBTTagEnd extends NBTTag {
     void read(DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
-        sizeTracker.read(64L);
+        sizeTracker.read(64L, 0L);
     }
 
     /**
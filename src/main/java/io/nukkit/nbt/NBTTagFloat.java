@@ -25,7 +25,7 @@ public class NBTTagFloat extends NBTTagNumber {
     }
 
     void read(DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
-        sizeTracker.read(96L);
+        sizeTracker.read(96L, 4L);
         this.data = input.readFloat();
     }
 
@@ -56,8 +56,11 @@ public class NBTTagFloat extends NBTTagNumber {
         }
     }
 
+    /**
+     * Hashes -0.0 like 0.0, which {@link #equals} treats as equal.
+     */
     public int hashCode() {
-        return super.hashCode() ^ Float.floatToIntBits(this.data);
+        return super.hashCode() ^ (this.data == 0.0F ? 0 : Float.floatToIntBits(this.data));
     }
 
     public long getLong() {
@@ -25,7 +25,7 @@ public class NBTTagInt extends NBTTagNumber {
     }
 
     void read(DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
-        sizeTracker.read(96L);
+        sizeTracker.read(96L, 4L);
         this.data = input.readInt();
     }
 
@@ -23,21 +23,15 @@ public class NBTTagIntArray extends NBTTag {
      */
     void write(DataOutput output) throws IOException {
         output.writeInt(this.intArray.length);
-
-        for (int i : this.intArray) {
-            output.writeInt(i);
-        }
+        NBTArrayIO.writeInts(output, this.intArray, this.intArray.length);
     }
 
     void read(DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
-        sizeTracker.read(192L);
+        sizeTracker.read(192L, 4L);
         int i = input.readInt();
-        sizeTracker.read((long) (32 * i));
+        sizeTracker.read(32L * (long) i, 4L * (long) i);
         this.intArray = new int[i];
-
-        for (int j = 0; j < i; ++j) {
-            this.intArray[j] = input.readInt();
-        }
+        NBTArrayIO.readInts(input, this.intArray, i);
     }
 
     /**
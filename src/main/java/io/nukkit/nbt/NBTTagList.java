@@ -1,43 +1,52 @@
 package io.nukkit.nbt;
 
-import com.google.common.collect.Lists;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.List;
 
+/**
+ * A list of tags of one type. Like compounds, lists share their elements with copies until either side is changed.
+ */
 public class NBTTagList extends NBTTag {
     private static final Logger LOGGER = LogManager.getLogger();
-    private List<NBTTag> tagList = Lists.newArrayList();
+    /**
+     * The elements of the list, kept in a primitive array when the element type is numeric.
+     */
+    private NBTListStorage tagList = new NBTListStorage.Tags(0);
 
     /**
      * The type byte for the tags in the list - they must all be of the same type.
      */
     private byte tagType = 0;
+    /**
+     * Whether tagList is shared with copies of this list and has to be cloned before it is changed.
+     */
+    private boolean shared;
+    /**
+     * Whether a mutable element may be referenced from outside this list.
+     */
+    private boolean exposed;
+    /**
+     * The cached hash code, trusted only while no mutable element is exposed.
+     */
+    private int hash;
+    private boolean hashed;
 
     /**
      * Write the actual data contents of the tag, implemented in NBT extension classes
      */
     void write(DataOutput output) throws IOException {
-        if (this.tagList.isEmpty()) {
-            this.tagType = 0;
-        } else {
-            this.tagType = this.tagList.get(0).getId();
-        }
-
-        output.writeByte(this.tagType);
+        // Empty lists are written without a type, but the list itself may be shared with copies, so it keeps its own
+        output.writeByte(this.tagList.size() == 0 ? 0 : this.tagType);
         output.writeInt(this.tagList.size());
-
-        for (int i = 0; i < this.tagList.size(); ++i) {
-            this.tagList.get(i).write(output);
-        }
+        this.tagList.write(output);
     }
 
     void read(DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
-        sizeTracker.read(296L);
+        sizeTracker.read(296L, 5L);
 
         if (depth > 512) {
             throw new RuntimeException("Tried to read NBT tag with too high complexity, depth > 512");
@@ -48,14 +57,12 @@ public class NBTTagList extends NBTTag {
             if (this.tagType == 0 && i > 0) {
                 throw new RuntimeException("Missing type on ListTag");
             } else {
-                sizeTracker.read(32L * (long) i);
-                this.tagList = Lists.newArrayListWithCapacity(i);
-
-                for (int j = 0; j < i; ++j) {
-                    NBTTag tag = NBTTag.createNewByType(this.tagType);
-                    tag.read(input, depth + 1, sizeTracker);
-                    this.tagList.add(tag);
-                }
+                sizeTracker.read(32L * (long) i, 0L);
+                this.tagList = NBTListStorage.create(this.tagType, 0);
+                this.shared = false;
+                this.exposed = false;
+                this.hashed = false;
+                this.tagList.read(input, this.tagType, i, depth + 1, sizeTracker);
             }
         }
     }
@@ -75,7 +82,8 @@ public class NBTTagList extends NBTTag {
                 stringbuilder.append(',');
             }
 
-            stringbuilder.append(i).append(':').append(this.tagList.get(i));
+            stringbuilder.append(i).append(':');
+            this.tagList.appendTo(stringbuilder, i);
         }
 
         return stringbuilder.append(']').toString();
@@ -91,12 +99,20 @@ public class NBTTagList extends NBTTag {
         } else {
             if (this.tagType == 0) {
                 this.tagType = nbt.getId();
+                this.tagList = NBTListStorage.create(this.tagType, 0);
+                this.shared = false;
             } else if (this.tagType != nbt.getId()) {
                 LOGGER.warn("Adding mismatching tag types to tag list");
                 return;
             }
 
+            this.detach();
+            this.hashed = false;
             this.tagList.add(nbt);
+
+            if (isMutable(this.tagType)) {
+                this.exposed = true;
+            }
         }
     }
 
@@ -114,7 +130,13 @@ public class NBTTagList extends NBTTag {
                 return;
             }
 
+            this.detach();
+            this.hashed = false;
             this.tagList.set(index, nbt);
+
+            if (isMutable(this.tagType)) {
+                this.exposed = true;
+            }
         } else {
             LOGGER.warn("index out of bounds to offset tag in tag list");
         }
@@ -124,6 +146,12 @@ public class NBTTagList extends NBTTag {
      * Removes a tag at the given index.
      */
     public NBTTag removeTag(int i) {
+        if (i < 0 || i >= this.tagList.size()) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + this.tagList.size());
+        }
+
+        this.detach();
+        this.hashed = false;
         return this.tagList.remove(i);
     }
 
@@ -131,7 +159,7 @@ public class NBTTagList extends NBTTag {
      * Return whether this compound has no tags.
      */
     public boolean hasNoTags() {
-        return this.tagList.isEmpty();
+        return this.tagList.size() == 0;
     }
 
     /**
@@ -139,7 +167,7 @@ public class NBTTagList extends NBTTag {
      */
     public NBTTagCompound getCompoundTagAt(int i) {
         if (i >= 0 && i < this.tagList.size()) {
-            NBTTag tag = this.tagList.get(i);
+            NBTTag tag = this.expose(i);
 
             if (tag.getId() == NBTTag.TAG_COMPOUND) {
                 return (NBTTagCompound) tag;
@@ -150,12 +178,8 @@ public class NBTTagList extends NBTTag {
     }
 
     public int getIntAt(int i) {
-        if (i >= 0 && i < this.tagList.size()) {
-            NBTTag tag = this.tagList.get(i);
-
-            if (tag.getId() == NBTTag.TAG_INT) {
-                return ((NBTTagInt) tag).getInt();
-            }
+        if (i >= 0 && i < this.tagList.size() && this.tagType == NBTTag.TAG_INT) {
+            return this.tagList.getInt(i);
         }
 
         return 0;
@@ -163,7 +187,7 @@ public class NBTTagList extends NBTTag {
 
     public int[] getIntArrayAt(int i) {
         if (i >= 0 && i < this.tagList.size()) {
-            NBTTag tag = this.tagList.get(i);
+            NBTTag tag = this.expose(i);
 
             if (tag.getId() == NBTTag.TAG_INT_ARRAY) {
                 return ((NBTTagIntArray) tag).getIntArray();
@@ -174,24 +198,16 @@ public class NBTTagList extends NBTTag {
     }
 
     public double getDoubleAt(int i) {
-        if (i >= 0 && i < this.tagList.size()) {
-            NBTTag tag = this.tagList.get(i);
-
-            if (tag.getId() == NBTTag.TAG_DOUBLE) {
-                return ((NBTTagDouble) tag).getDouble();
-            }
+        if (i >= 0 && i < this.tagList.size() && this.tagType == NBTTag.TAG_DOUBLE) {
+            return this.tagList.getDouble(i);
         }
 
         return 0.0D;
     }
 
     public float getFloatAt(int i) {
-        if (i >= 0 && i < this.tagList.size()) {
-            NBTTag tag = this.tagList.get(i);
-
-            if (tag.getId() == NBTTag.TAG_FLOAT) {
-                return ((NBTTagFloat) tag).getFloat();
-            }
+        if (i >= 0 && i < this.tagList.size() && this.tagType == NBTTag.TAG_FLOAT) {
+            return this.tagList.getFloat(i);
         }
 
         return 0.0F;
@@ -210,10 +226,17 @@ public class NBTTagList extends NBTTag {
     }
 
     /**
-     * Get the tag at the given position
+     * Get the tag at the given position. Elements of numeric lists are returned as new tags.
      */
     public NBTTag get(int idx) {
-        return idx >= 0 && idx < this.tagList.size() ? this.tagList.get(idx) : new NBTTagEnd();
+        return idx >= 0 && idx < this.tagList.size() ? this.expose(idx) : new NBTTagEnd();
+    }
+
+    /**
+     * Gets the tag at the given position without handing it out, for read-only use inside the package.
+     */
+    NBTTag peek(int idx) {
+        return this.tagList.get(idx);
     }
 
     /**
@@ -230,20 +253,36 @@ public class NBTTagList extends NBTTag {
         NBTTagList nbttaglist = new NBTTagList();
         nbttaglist.tagType = this.tagType;
 
-        for (NBTTag tag : this.tagList) {
-            NBTTag newTag = tag.copy();
-            nbttaglist.tagList.add(newTag);
+        if (this.exposed) {
+            nbttaglist.tagList = this.tagList.copy();
+        } else {
+            nbttaglist.tagList = this.tagList;
+            nbttaglist.shared = true;
+            this.shared = true;
+        }
+
+        if (this.hashed && !this.exposed) {
+            nbttaglist.hash = this.hash;
+            nbttaglist.hashed = true;
         }
 
         return nbttaglist;
     }
 
     public boolean equals(Object obj) {
-        if (super.equals(obj)) {
+        if (this == obj) {
+            return true;
+        } else if (super.equals(obj)) {
             NBTTagList nbttaglist = (NBTTagList) obj;
 
             if (this.tagType == nbttaglist.tagType) {
-                return this.tagList.equals(nbttaglist.tagList);
+                if (this.tagList == nbttaglist.tagList) {
+                    return true;
+                } else if (!this.exposed && !nbttaglist.exposed && this.hashCode() != nbttaglist.hashCode()) {
+                    return false;
+                }
+
+                return this.tagList.contentEquals(nbttaglist.tagList);
             }
         }
 
@@ -251,10 +290,72 @@ public class NBTTagList extends NBTTag {
     }
 
     public int hashCode() {
-        return super.hashCode() ^ this.tagList.hashCode();
+        if (!this.hashed || this.exposed) {
+            this.hash = super.hashCode() ^ this.tagList.contentHash();
+            this.hashed = true;
+        }
+
+        return this.hash;
     }
 
     public int getTagType() {
         return this.tagType;
     }
+
+    /**
+     * Gets an element to change in place inside the package, without handing it out like {@link #get} does.
+     */
+    NBTTag edit(int i) {
+        this.detach();
+        this.hashed = false;
+        return this.tagList.get(i);
+    }
+
+    /**
+     * Gives an empty list the given element type inside the package. Empty lists read from a stream have none.
+     */
+    void setTagType(byte type) {
+        this.tagType = type;
+        this.tagList = NBTListStorage.create(type, 0);
+        this.shared = false;
+        this.hashed = false;
+    }
+
+    /**
+     * Sets or, at the end of the list, appends an element of the list's type inside the package, without handing it out
+     * like {@link #set} and {@link #appendTag} do.
+     */
+    void put(int index, NBTTag nbt) {
+        this.detach();
+        this.hashed = false;
+
+        if (index == this.tagList.size()) {
+            this.tagList.add(nbt);
+        } else {
+            this.tagList.set(index, nbt);
+        }
+    }
+
+    /**
+     * Gets an element that the caller may change or keep, making sure it is no longer shared with a copy.
+     */
+    private NBTTag expose(int i) {
+        if (isMutable(this.tagType)) {
+            this.detach();
+            this.exposed = true;
+        }
+
+        return this.tagList.get(i);
+    }
+
+    /**
+     * Takes a private copy of a storage shared with copies of this list. Numeric lists copy their primitive array, other
+     * lists their element references, with compound and list elements copied in O(1) and array elements in full.
+     */
+    private void detach() {
+        if (this.shared) {
+            this.tagList = this.tagList.copy();
+            this.shared = false;
+        }
+    }
 }
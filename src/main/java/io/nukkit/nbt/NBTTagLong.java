@@ -25,7 +25,7 @@ public class NBTTagLong extends NBTTagNumber {
     }
 
     void read(DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
-        sizeTracker.read(128L);
+        sizeTracker.read(128L, 8L);
         this.data = input.readLong();
     }
 
@@ -0,0 +1,76 @@
+package io.nukkit.nbt;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class NBTTagLongArray extends NBTTag {
+    /**
+     * The array of saved longs
+     */
+    private long[] longArray;
+
+    NBTTagLongArray() {
+    }
+
+    public NBTTagLongArray(long[] longArray) {
+        this.longArray = longArray;
+    }
+
+    /**
+     * Write the actual data contents of the tag, implemented in NBT extension classes
+     */
+    void write(DataOutput output) throws IOException {
+        output.writeInt(this.longArray.length);
+        NBTArrayIO.writeLongs(output, this.longArray, this.longArray.length);
+    }
+
+    void read(DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
+        sizeTracker.read(192L, 4L);
+        int i = input.readInt();
+        sizeTracker.read(64L * (long) i, 8L * (long) i);
+        this.longArray = new long[i];
+        NBTArrayIO.readLongs(input, this.longArray, i);
+    }
+
+    /**
+     * Gets the type byte for the tag.
+     */
+    public byte getId() {
+        return (byte) 12;
+    }
+
+    public String toString() {
+        StringBuilder stringbuilder = new StringBuilder("[L;");
+
+        for (int i = 0; i < this.longArray.length; ++i) {
+            if (i != 0) {
+                stringbuilder.append(',');
+            }
+
+            stringbuilder.append(this.longArray[i]).append('L');
+        }
+
+        return stringbuilder.append(']').toString();
+    }
+
+    /**
+     * Creates a clone of the tag.
+     */
+    public NBTTagLongArray copy() {
+        return new NBTTagLongArray(Arrays.copyOf(this.longArray, this.longArray.length));
+    }
+
+    public boolean equals(Object obj) {
+        return super.equals(obj) && Arrays.equals(this.longArray, ((NBTTagLongArray) obj).longArray);
+    }
+
+    public int hashCode() {
+        return super.hashCode() ^ Arrays.hashCode(this.longArray);
+    }
+
+    public long[] getLongArray() {
+        return this.longArray;
+    }
+}
@@ -25,7 +25,7 @@ public class NBTTagShort extends NBTTagNumber {
     }
 
     void read(DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
-        sizeTracker.read(80L);
+        sizeTracker.read(80L, 2L);
         this.data = input.readShort();
     }
 
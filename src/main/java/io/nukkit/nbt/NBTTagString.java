@@ -30,9 +30,9 @@ public class NBTTagString extends NBTTag {
     }
 
     void read(DataInput input, int depth, NBTSizeTracker sizeTracker) throws IOException {
-        sizeTracker.read(288L);
+        sizeTracker.read(288L, 0L);
         this.data = input.readUTF();
-        sizeTracker.read((long) (16 * this.data.length()));
+        sizeTracker.readUTF(0L, 0L, this.data);
     }
 
     /**
@@ -0,0 +1,196 @@
+package io.nukkit.nbt;
+
+import java.math.BigDecimal;
+
+/**
+ * Writes tags in the textual format read by {@link JsonToNBT}, appending straight into one builder. Unlike toString()
+ * of the tags the output always parses back to an equal tag, with two exceptions: non-finite floating point values, and
+ * empty lists, which the format writes as {@code []} without an element type, so they parse back with type 0 just like
+ * the binary format reads them.
+ */
+public class NBTToJson {
+    public static String toJson(NBTTag tag) {
+        StringBuilder stringbuilder = new StringBuilder();
+        write(tag, stringbuilder);
+        return stringbuilder.toString();
+    }
+
+    public static void write(NBTTag tag, StringBuilder builder) {
+        switch (tag.getId()) {
+            case NBTTag.TAG_BYTE:
+                builder.append(((NBTTagNumber) tag).getByte()).append('b');
+                break;
+
+            case NBTTag.TAG_SHORT:
+                builder.append(((NBTTagNumber) tag).getShort()).append('s');
+                break;
+
+            case NBTTag.TAG_INT:
+                builder.append(((NBTTagNumber) tag).getInt());
+                break;
+
+            case NBTTag.TAG_LONG:
+                builder.append(((NBTTagNumber) tag).getLong()).append('L');
+                break;
+
+            case NBTTag.TAG_FLOAT:
+                writeDecimal(Float.toString(((NBTTagNumber) tag).getFloat()), builder);
+                builder.append('f');
+                break;
+
+            case NBTTag.TAG_DOUBLE:
+                writeDecimal(Double.toString(((NBTTagNumber) tag).getDouble()), builder);
+                builder.append('d');
+                break;
+
+            case NBTTag.TAG_BYTE_ARRAY:
+                byte[] abyte = ((NBTTagByteArray) tag).getByteArray();
+                builder.append("[B;");
+
+                for (int i = 0; i < abyte.length; ++i) {
+                    if (i != 0) {
+                        builder.append(',');
+                    }
+
+                    builder.append(abyte[i]).append('b');
+                }
+
+                builder.append(']');
+                break;
+
+            case NBTTag.TAG_STRING:
+                writeString(tag.getString(), builder);
+                break;
+
+            case NBTTag.TAG_LIST:
+                writeList((NBTTagList) tag, builder);
+                break;
+
+            case NBTTag.TAG_COMPOUND:
+                writeCompound((NBTTagCompound) tag, builder);
+                break;
+
+            case NBTTag.TAG_INT_ARRAY:
+                int[] aint = ((NBTTagIntArray) tag).getIntArray();
+                builder.append("[I;");
+
+                for (int i = 0; i < aint.length; ++i) {
+                    if (i != 0) {
+                        builder.append(',');
+                    }
+
+                    builder.append(aint[i]);
+                }
+
+                builder.append(']');
+                break;
+
+            case NBTTag.TAG_LONG_ARRAY:
+                long[] along = ((NBTTagLongArray) tag).getLongArray();
+                builder.append("[L;");
+
+                for (int i = 0; i < along.length; ++i) {
+                    if (i != 0) {
+                        builder.append(',');
+                    }
+
+                    builder.append(along[i]).append('L');
+                }
+
+                builder.append(']');
+                break;
+
+            default:
+                builder.append(tag);
+        }
+    }
+
+    private static void writeCompound(NBTTagCompound compound, StringBuilder builder) {
+        builder.append('{');
+        boolean first = true;
+
+        for (String s : compound.getKeySet()) {
+            if (!first) {
+                builder.append(',');
+            }
+
+            first = false;
+
+            if (isSimpleKey(s)) {
+                builder.append(s);
+            } else {
+                writeString(s, builder);
+            }
+
+            builder.append(':');
+            write(compound.peek(s), builder);
+        }
+
+        builder.append('}');
+    }
+
+    /**
+     * Int lists keep the index prefix, since a bare list of ints reads back as an int array.
+     */
+    private static void writeList(NBTTagList list, StringBuilder builder) {
+        boolean indexed = list.getTagType() == NBTTag.TAG_INT;
+        builder.append('[');
+
+        for (int i = 0; i < list.tagCount(); ++i) {
+            if (i != 0) {
+                builder.append(',');
+            }
+
+            if (indexed) {
+                builder.append(i).append(':');
+            }
+
+            write(list.peek(i), builder);
+        }
+
+        builder.append(']');
+    }
+
+    private static void writeString(String s, StringBuilder builder) {
+        builder.append('"');
+
+        for (int i = 0; i < s.length(); ++i) {
+            char c0 = s.charAt(i);
+
+            if (c0 == '"' || c0 == '\\') {
+                builder.append('\\');
+            }
+
+            builder.append(c0);
+        }
+
+        builder.append('"');
+    }
+
+    /**
+     * Writes a decimal without exponent, which the parser does not accept.
+     */
+    private static void writeDecimal(String s, StringBuilder builder) {
+        if (s.indexOf('E') < 0 || s.indexOf('N') >= 0 || s.indexOf('I') >= 0) {
+            builder.append(s);
+        } else {
+            builder.append(new BigDecimal(s).toPlainString());
+        }
+    }
+
+    private static boolean isSimpleKey(String s) {
+        if (s.isEmpty()) {
+            return false;
+        }
+
+        for (int i = 0; i < s.length(); ++i) {
+            char c0 = s.charAt(i);
+
+            if (!(c0 >= 'a' && c0 <= 'z' || c0 >= 'A' && c0 <= 'Z' || c0 >= '0' && c0 <= '9' || c0 == '_' || c0 == '-' || c0 == '.' || c0 == '+')) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
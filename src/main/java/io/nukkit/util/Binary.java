@@ -1,7 +1,11 @@
 package io.nukkit.util;
 
 
+import java.io.IOException;
+import java.io.Writer;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
 import java.util.Arrays;
 import java.util.UUID;
 
@@ -13,55 +17,63 @@ public class Binary {
 
     //Triad: {0x00,0x00,0x01}<=>1
     public static int readTriad(byte[] bytes) {
-        return readInt(new byte[]{
-                (byte) 0x00,
-                bytes[0],
-                bytes[1],
-                bytes[2]
-        });
+        return readTriad(bytes, 0);
+    }
+
+    public static int readTriad(byte[] buf, int off) {
+        return ((buf[off] & 0xFF) << 16) | ((buf[off + 1] & 0xFF) << 8) | (buf[off + 2] & 0xFF);
     }
 
     public static byte[] writeTriad(int value) {
-        return new byte[]{
-                (byte) ((value >>> 16) & 0xFF),
-                (byte) ((value >>> 8) & 0xFF),
-                (byte) (value & 0xFF)
-        };
+        byte[] bytes = new byte[3];
+        writeTriad(bytes, 0, value);
+        return bytes;
+    }
+
+    public static void writeTriad(byte[] buf, int off, int value) {
+        buf[off] = (byte) (value >>> 16);
+        buf[off + 1] = (byte) (value >>> 8);
+        buf[off + 2] = (byte) value;
     }
 
     //LTriad: {0x01,0x00,0x00}<=>1
     public static int readLTriad(byte[] bytes) {
-        return readLInt(new byte[]{
-                bytes[0],
-                bytes[1],
-                bytes[2],
-                (byte) 0x00
-        });
+        return readLTriad(bytes, 0);
+    }
+
+    public static int readLTriad(byte[] buf, int off) {
+        return (buf[off] & 0xFF) | ((buf[off + 1] & 0xFF) << 8) | ((buf[off + 2] & 0xFF) << 16);
     }
 
     public static byte[] writeLTriad(int value) {
-        return new byte[]{
-                (byte) (value & 0xFF),
-                (byte) ((value >>> 8) & 0xFF),
-                (byte) ((value >>> 16) & 0xFF)
-        };
+        byte[] bytes = new byte[3];
+        writeLTriad(bytes, 0, value);
+        return bytes;
+    }
+
+    public static void writeLTriad(byte[] buf, int off, int value) {
+        buf[off] = (byte) value;
+        buf[off + 1] = (byte) (value >>> 8);
+        buf[off + 2] = (byte) (value >>> 16);
     }
 
     public static UUID readUUID(byte[] bytes) {
-        return new UUID(readLong(bytes), readLong(new byte[]{
-                bytes[8],
-                bytes[9],
-                bytes[10],
-                bytes[11],
-                bytes[12],
-                bytes[13],
-                bytes[14],
-                bytes[15]
-        }));
+        return readUUID(bytes, 0);
+    }
+
+    public static UUID readUUID(byte[] buf, int off) {
+        return new UUID(readLong(buf, off), readLong(buf, off + 8));
     }
 
     public static byte[] writeUUID(UUID uuid) {
-        return appendBytes(writeLong(uuid.getMostSignificantBits()), writeLong(uuid.getLeastSignificantBits()));
+        byte[] bytes = new byte[16];
+        writeUUID(bytes, 0, uuid);
+        return bytes;
+    }
+
+    public static void writeUUID(byte[] buf, int off, UUID uuid) {
+        writeLong(buf, off, uuid.getMostSignificantBits());
+        writeLong(buf, off + 8, uuid.getLeastSignificantBits());
     }
 
     //TODO: EntityMetaData
@@ -83,149 +95,552 @@ public class Binary {
     }
 
     public static int readShort(byte[] bytes) {
-        return ((bytes[0] & 0xFF) << 8) + (bytes[1] & 0xFF);
+        return readShort(bytes, 0);
+    }
+
+    public static int readShort(byte[] buf, int off) {
+        return ((buf[off] & 0xFF) << 8) | (buf[off + 1] & 0xFF);
     }
 
     public static short readSignedShort(byte[] bytes) {
-        return (short) readShort(bytes);
+        return (short) readShort(bytes, 0);
+    }
+
+    public static short readSignedShort(byte[] buf, int off) {
+        return (short) readShort(buf, off);
     }
 
     public static byte[] writeShort(int s) {
-        return new byte[]{
-                (byte) ((s >>> 8) & 0xFF),
-                (byte) (s & 0xFF)
-        };
+        byte[] bytes = new byte[2];
+        writeShort(bytes, 0, s);
+        return bytes;
+    }
+
+    public static void writeShort(byte[] buf, int off, int s) {
+        buf[off] = (byte) (s >>> 8);
+        buf[off + 1] = (byte) s;
     }
 
     public static int readLShort(byte[] bytes) {
-        return (bytes[1] & 0xFF << 8) + (bytes[0] & 0xFF);
+        return readLShort(bytes, 0);
+    }
+
+    public static int readLShort(byte[] buf, int off) {
+        return (buf[off] & 0xFF) | ((buf[off + 1] & 0xFF) << 8);
     }
 
     public static short readSignedLShort(byte[] bytes) {
-        return (short) readLShort(bytes);
+        return (short) readLShort(bytes, 0);
+    }
+
+    public static short readSignedLShort(byte[] buf, int off) {
+        return (short) readLShort(buf, off);
     }
 
     public static byte[] writeLShort(int s) {
-        s &= 0xffff;
-        return new byte[]{
-                (byte) (s & 0xFF),
-                (byte) ((s >>> 8) & 0xFF)
-        };
+        byte[] bytes = new byte[2];
+        writeLShort(bytes, 0, s);
+        return bytes;
+    }
+
+    public static void writeLShort(byte[] buf, int off, int s) {
+        buf[off] = (byte) s;
+        buf[off + 1] = (byte) (s >>> 8);
     }
 
     public static int readInt(byte[] bytes) {
-        return ((bytes[0] & 0xff) << 24) +
-                ((bytes[1] & 0xff) << 16) +
-                ((bytes[2] & 0xff) << 8) +
-                (bytes[3] & 0xff);
+        return readInt(bytes, 0);
+    }
+
+    public static int readInt(byte[] buf, int off) {
+        return (buf[off] << 24) |
+                ((buf[off + 1] & 0xFF) << 16) |
+                ((buf[off + 2] & 0xFF) << 8) |
+                (buf[off + 3] & 0xFF);
     }
 
     public static byte[] writeInt(int i) {
-        return new byte[]{
-                (byte) ((i >>> 24) & 0xFF),
-                (byte) ((i >>> 16) & 0xFF),
-                (byte) ((i >>> 8) & 0xFF),
-                (byte) (i & 0xFF)
-        };
+        byte[] bytes = new byte[4];
+        writeInt(bytes, 0, i);
+        return bytes;
+    }
+
+    public static void writeInt(byte[] buf, int off, int i) {
+        buf[off] = (byte) (i >>> 24);
+        buf[off + 1] = (byte) (i >>> 16);
+        buf[off + 2] = (byte) (i >>> 8);
+        buf[off + 3] = (byte) i;
     }
 
     public static int readLInt(byte[] bytes) {
-        return ((bytes[3] & 0xff) << 24) +
-                ((bytes[2] & 0xff) << 16) +
-                ((bytes[1] & 0xff) << 8) +
-                (bytes[0] & 0xff);
+        return readLInt(bytes, 0);
+    }
+
+    public static int readLInt(byte[] buf, int off) {
+        return (buf[off] & 0xFF) |
+                ((buf[off + 1] & 0xFF) << 8) |
+                ((buf[off + 2] & 0xFF) << 16) |
+                (buf[off + 3] << 24);
     }
 
     public static byte[] writeLInt(int i) {
-        return new byte[]{
-                (byte) (i & 0xFF),
-                (byte) ((i >>> 8) & 0xFF),
-                (byte) ((i >>> 16) & 0xFF),
-                (byte) ((i >>> 24) & 0xFF)
-        };
+        byte[] bytes = new byte[4];
+        writeLInt(bytes, 0, i);
+        return bytes;
+    }
+
+    public static void writeLInt(byte[] buf, int off, int i) {
+        buf[off] = (byte) i;
+        buf[off + 1] = (byte) (i >>> 8);
+        buf[off + 2] = (byte) (i >>> 16);
+        buf[off + 3] = (byte) (i >>> 24);
     }
 
     public static float readFloat(byte[] bytes) {
-        return Float.intBitsToFloat(readInt(bytes));
+        return Float.intBitsToFloat(readInt(bytes, 0));
+    }
+
+    public static float readFloat(byte[] buf, int off) {
+        return Float.intBitsToFloat(readInt(buf, off));
     }
 
     public static byte[] writeFloat(float f) {
         return writeInt(Float.floatToIntBits(f));
     }
 
+    public static void writeFloat(byte[] buf, int off, float f) {
+        writeInt(buf, off, Float.floatToIntBits(f));
+    }
+
     public static float readLFloat(byte[] bytes) {
-        return Float.intBitsToFloat(readLInt(bytes));
+        return Float.intBitsToFloat(readLInt(bytes, 0));
+    }
+
+    public static float readLFloat(byte[] buf, int off) {
+        return Float.intBitsToFloat(readLInt(buf, off));
     }
 
     public static byte[] writeLFloat(float f) {
         return writeLInt(Float.floatToIntBits(f));
     }
 
+    public static void writeLFloat(byte[] buf, int off, float f) {
+        writeLInt(buf, off, Float.floatToIntBits(f));
+    }
+
     public static double readDouble(byte[] bytes) {
-        return Double.longBitsToDouble(readLong(bytes));
+        return Double.longBitsToDouble(readLong(bytes, 0));
+    }
+
+    public static double readDouble(byte[] buf, int off) {
+        return Double.longBitsToDouble(readLong(buf, off));
     }
 
     public static byte[] writeDouble(double d) {
         return writeLong(Double.doubleToLongBits(d));
     }
 
+    public static void writeDouble(byte[] buf, int off, double d) {
+        writeLong(buf, off, Double.doubleToLongBits(d));
+    }
+
     public static double readLDouble(byte[] bytes) {
-        return Double.longBitsToDouble(readLLong(bytes));
+        return Double.longBitsToDouble(readLLong(bytes, 0));
+    }
+
+    public static double readLDouble(byte[] buf, int off) {
+        return Double.longBitsToDouble(readLLong(buf, off));
     }
 
     public static byte[] writeLDouble(double d) {
         return writeLLong(Double.doubleToLongBits(d));
     }
 
+    public static void writeLDouble(byte[] buf, int off, double d) {
+        writeLLong(buf, off, Double.doubleToLongBits(d));
+    }
+
     public static long readLong(byte[] bytes) {
-        return (((long) bytes[0] << 56) +
-                ((long) (bytes[1] & 0xFF) << 48) +
-                ((long) (bytes[2] & 0xFF) << 40) +
-                ((long) (bytes[3] & 0xFF) << 32) +
-                ((long) (bytes[4] & 0xFF) << 24) +
-                ((bytes[5] & 0xFF) << 16) +
-                ((bytes[6] & 0xFF) << 8) +
-                ((bytes[7] & 0xFF)));
+        return readLong(bytes, 0);
+    }
+
+    public static long readLong(byte[] buf, int off) {
+        return ((long) readInt(buf, off) << 32) | (readInt(buf, off + 4) & 0xFFFFFFFFL);
     }
 
     public static byte[] writeLong(long l) {
-        return new byte[]{
-                (byte) (l >>> 56),
-                (byte) (l >>> 48),
-                (byte) (l >>> 40),
-                (byte) (l >>> 32),
-                (byte) (l >>> 24),
-                (byte) (l >>> 16),
-                (byte) (l >>> 8),
-                (byte) (l)
-        };
+        byte[] bytes = new byte[8];
+        writeLong(bytes, 0, l);
+        return bytes;
+    }
+
+    public static void writeLong(byte[] buf, int off, long l) {
+        writeInt(buf, off, (int) (l >>> 32));
+        writeInt(buf, off + 4, (int) l);
     }
 
     public static long readLLong(byte[] bytes) {
-        return (((long) bytes[7] << 56) +
-                ((long) (bytes[6] & 0xFF) << 48) +
-                ((long) (bytes[5] & 0xFF) << 40) +
-                ((long) (bytes[4] & 0xFF) << 32) +
-                ((long) (bytes[3] & 0xFF) << 24) +
-                ((bytes[2] & 0xFF) << 16) +
-                ((bytes[1] & 0xFF) << 8) +
-                ((bytes[0] & 0xFF)));
+        return readLLong(bytes, 0);
+    }
+
+    public static long readLLong(byte[] buf, int off) {
+        return (readLInt(buf, off) & 0xFFFFFFFFL) | ((long) readLInt(buf, off + 4) << 32);
     }
 
     public static byte[] writeLLong(long l) {
-        return new byte[]{
-                (byte) (l),
-                (byte) (l >>> 8),
-                (byte) (l >>> 16),
-                (byte) (l >>> 24),
-                (byte) (l >>> 32),
-                (byte) (l >>> 40),
-                (byte) (l >>> 48),
-                (byte) (l >>> 56),
-        };
+        byte[] bytes = new byte[8];
+        writeLLong(bytes, 0, l);
+        return bytes;
+    }
+
+    public static void writeLLong(byte[] buf, int off, long l) {
+        writeLInt(buf, off, (int) l);
+        writeLInt(buf, off + 4, (int) (l >>> 32));
+    }
+
+    //ByteBuffer variants: absolute index, independent of the buffer's byte order and position
+
+    public static int readTriad(ByteBuffer buf, int index) {
+        return ((buf.get(index) & 0xFF) << 16) | ((buf.get(index + 1) & 0xFF) << 8) | (buf.get(index + 2) & 0xFF);
+    }
+
+    public static void writeTriad(ByteBuffer buf, int index, int value) {
+        buf.put(index, (byte) (value >>> 16));
+        buf.put(index + 1, (byte) (value >>> 8));
+        buf.put(index + 2, (byte) value);
+    }
+
+    public static int readLTriad(ByteBuffer buf, int index) {
+        return (buf.get(index) & 0xFF) | ((buf.get(index + 1) & 0xFF) << 8) | ((buf.get(index + 2) & 0xFF) << 16);
+    }
+
+    public static void writeLTriad(ByteBuffer buf, int index, int value) {
+        buf.put(index, (byte) value);
+        buf.put(index + 1, (byte) (value >>> 8));
+        buf.put(index + 2, (byte) (value >>> 16));
+    }
+
+    public static UUID readUUID(ByteBuffer buf, int index) {
+        return new UUID(readLong(buf, index), readLong(buf, index + 8));
+    }
+
+    public static void writeUUID(ByteBuffer buf, int index, UUID uuid) {
+        writeLong(buf, index, uuid.getMostSignificantBits());
+        writeLong(buf, index + 8, uuid.getLeastSignificantBits());
+    }
+
+    public static int readShort(ByteBuffer buf, int index) {
+        return bigEndian(buf) ? buf.getShort(index) & 0xFFFF : Short.reverseBytes(buf.getShort(index)) & 0xFFFF;
+    }
+
+    public static void writeShort(ByteBuffer buf, int index, int s) {
+        buf.putShort(index, bigEndian(buf) ? (short) s : Short.reverseBytes((short) s));
+    }
+
+    public static int readLShort(ByteBuffer buf, int index) {
+        return bigEndian(buf) ? Short.reverseBytes(buf.getShort(index)) & 0xFFFF : buf.getShort(index) & 0xFFFF;
+    }
+
+    public static void writeLShort(ByteBuffer buf, int index, int s) {
+        buf.putShort(index, bigEndian(buf) ? Short.reverseBytes((short) s) : (short) s);
+    }
+
+    public static int readInt(ByteBuffer buf, int index) {
+        return bigEndian(buf) ? buf.getInt(index) : Integer.reverseBytes(buf.getInt(index));
+    }
+
+    public static void writeInt(ByteBuffer buf, int index, int i) {
+        buf.putInt(index, bigEndian(buf) ? i : Integer.reverseBytes(i));
+    }
+
+    public static int readLInt(ByteBuffer buf, int index) {
+        return bigEndian(buf) ? Integer.reverseBytes(buf.getInt(index)) : buf.getInt(index);
+    }
+
+    public static void writeLInt(ByteBuffer buf, int index, int i) {
+        buf.putInt(index, bigEndian(buf) ? Integer.reverseBytes(i) : i);
+    }
+
+    public static float readFloat(ByteBuffer buf, int index) {
+        return Float.intBitsToFloat(readInt(buf, index));
+    }
+
+    public static void writeFloat(ByteBuffer buf, int index, float f) {
+        writeInt(buf, index, Float.floatToIntBits(f));
+    }
+
+    public static float readLFloat(ByteBuffer buf, int index) {
+        return Float.intBitsToFloat(readLInt(buf, index));
+    }
+
+    public static void writeLFloat(ByteBuffer buf, int index, float f) {
+        writeLInt(buf, index, Float.floatToIntBits(f));
+    }
+
+    public static long readLong(ByteBuffer buf, int index) {
+        return bigEndian(buf) ? buf.getLong(index) : Long.reverseBytes(buf.getLong(index));
+    }
+
+    public static void writeLong(ByteBuffer buf, int index, long l) {
+        buf.putLong(index, bigEndian(buf) ? l : Long.reverseBytes(l));
+    }
+
+    public static long readLLong(ByteBuffer buf, int index) {
+        return bigEndian(buf) ? Long.reverseBytes(buf.getLong(index)) : buf.getLong(index);
+    }
+
+    public static void writeLLong(ByteBuffer buf, int index, long l) {
+        buf.putLong(index, bigEndian(buf) ? Long.reverseBytes(l) : l);
+    }
+
+    public static double readDouble(ByteBuffer buf, int index) {
+        return Double.longBitsToDouble(readLong(buf, index));
+    }
+
+    public static void writeDouble(ByteBuffer buf, int index, double d) {
+        writeLong(buf, index, Double.doubleToLongBits(d));
+    }
+
+    public static double readLDouble(ByteBuffer buf, int index) {
+        return Double.longBitsToDouble(readLLong(buf, index));
+    }
+
+    public static void writeLDouble(ByteBuffer buf, int index, double d) {
+        writeLLong(buf, index, Double.doubleToLongBits(d));
+    }
+
+    private static boolean bigEndian(ByteBuffer buf) {
+        return buf.order() == ByteOrder.BIG_ENDIAN;
+    }
+
+    //VarInt: little-endian base 128, 7 bits per byte with the high bit set on all but the last byte
+    //Signed var-ints are ZigZag encoded first, so small negative values stay short
+
+    public static int encodeZigZag32(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static int decodeZigZag32(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static long encodeZigZag64(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long decodeZigZag64(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static int unsignedVarIntSize(int value) {
+        return (38 - Integer.numberOfLeadingZeros(value | 1)) / 7;
+    }
+
+    public static int unsignedVarLongSize(long value) {
+        return (70 - Long.numberOfLeadingZeros(value | 1)) / 7;
+    }
+
+    public static byte[] writeUnsignedVarInt(int value) {
+        byte[] bytes = new byte[unsignedVarIntSize(value)];
+        writeUnsignedVarInt(bytes, 0, value);
+        return bytes;
+    }
+
+    public static byte[] writeVarInt(int value) {
+        return writeUnsignedVarInt(encodeZigZag32(value));
+    }
+
+    public static byte[] writeUnsignedVarLong(long value) {
+        byte[] bytes = new byte[unsignedVarLongSize(value)];
+        writeUnsignedVarLong(bytes, 0, value);
+        return bytes;
+    }
+
+    public static byte[] writeVarLong(long value) {
+        return writeUnsignedVarLong(encodeZigZag64(value));
+    }
+
+    /**
+     * Writes the var-int at the given offset and returns the offset after it.
+     */
+    public static int writeUnsignedVarInt(byte[] buf, int off, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf[off++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        buf[off++] = (byte) value;
+        return off;
+    }
+
+    public static int writeVarInt(byte[] buf, int off, int value) {
+        return writeUnsignedVarInt(buf, off, encodeZigZag32(value));
+    }
+
+    public static int writeUnsignedVarLong(byte[] buf, int off, long value) {
+        while ((value & ~0x7FL) != 0L) {
+            buf[off++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        buf[off++] = (byte) value;
+        return off;
+    }
+
+    public static int writeVarLong(byte[] buf, int off, long value) {
+        return writeUnsignedVarLong(buf, off, encodeZigZag64(value));
+    }
+
+    /**
+     * Reads the var-int at position[0] and advances position[0] past it.
+     */
+    public static int readUnsignedVarInt(byte[] buf, int[] position) {
+        long result = decodeVarInt(buf, position[0]);
+        position[0] = (int) (result >>> 32);
+        return (int) result;
+    }
+
+    public static int readVarInt(byte[] buf, int[] position) {
+        return decodeZigZag32(readUnsignedVarInt(buf, position));
+    }
+
+    public static long readUnsignedVarLong(byte[] buf, int[] position) {
+        int off = position[0];
+        long value = 0L;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = buf[off++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                position[0] = off;
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("VarLong too big");
+    }
+
+    public static long readVarLong(byte[] buf, int[] position) {
+        return decodeZigZag64(readUnsignedVarLong(buf, position));
+    }
+
+    /**
+     * Decodes count var-ints starting at off into dst and returns the offset after the last one.
+     */
+    public static int readUnsignedVarIntArray(byte[] buf, int off, int[] dst, int dstOff, int count) {
+        for (int i = 0; i < count; i++) {
+            long result = decodeVarInt(buf, off);
+            dst[dstOff + i] = (int) result;
+            off = (int) (result >>> 32);
+        }
+        return off;
+    }
+
+    public static int readVarIntArray(byte[] buf, int off, int[] dst, int dstOff, int count) {
+        off = readUnsignedVarIntArray(buf, off, dst, dstOff, count);
+        for (int i = dstOff; i < dstOff + count; i++) {
+            dst[i] = decodeZigZag32(dst[i]);
+        }
+        return off;
+    }
+
+    //ByteBuffer var-ints are relative: they start at and advance the buffer's position
+
+    public static void writeUnsignedVarInt(ByteBuffer buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.put((byte) (value | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    public static void writeVarInt(ByteBuffer buf, int value) {
+        writeUnsignedVarInt(buf, encodeZigZag32(value));
     }
 
-    //TODO: VarInt
+    public static void writeUnsignedVarLong(ByteBuffer buf, long value) {
+        while ((value & ~0x7FL) != 0L) {
+            buf.put((byte) (value | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    public static void writeVarLong(ByteBuffer buf, long value) {
+        writeUnsignedVarLong(buf, encodeZigZag64(value));
+    }
+
+    public static int readUnsignedVarInt(ByteBuffer buf) {
+        if (buf.hasArray() && buf.remaining() >= 5) {
+            int base = buf.arrayOffset();
+            long result = decodeVarInt(buf.array(), base + buf.position());
+            buf.position((int) (result >>> 32) - base);
+            return (int) result;
+        }
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buf.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("VarInt too big");
+    }
+
+    public static int readVarInt(ByteBuffer buf) {
+        return decodeZigZag32(readUnsignedVarInt(buf));
+    }
+
+    public static long readUnsignedVarLong(ByteBuffer buf) {
+        long value = 0L;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = buf.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("VarLong too big");
+    }
+
+    public static long readVarLong(ByteBuffer buf) {
+        return decodeZigZag64(readUnsignedVarLong(buf));
+    }
+
+    public static void readUnsignedVarIntArray(ByteBuffer buf, int[] dst, int dstOff, int count) {
+        for (int i = 0; i < count; i++) {
+            dst[dstOff + i] = readUnsignedVarInt(buf);
+        }
+    }
+
+    public static void readVarIntArray(ByteBuffer buf, int[] dst, int dstOff, int count) {
+        for (int i = 0; i < count; i++) {
+            dst[dstOff + i] = decodeZigZag32(readUnsignedVarInt(buf));
+        }
+    }
+
+    /**
+     * Decodes the var-int at off, returning the value in the low and the offset after it in the high 32 bits. The one
+     * and two byte cases, which cover nearly all protocol values, avoid the loop.
+     */
+    static long decodeVarInt(byte[] buf, int off) {
+        int b = buf[off];
+        if (b >= 0) {
+            return (long) (off + 1) << 32 | b;
+        }
+        int value = b & 0x7F;
+        b = buf[off + 1];
+        if (b >= 0) {
+            return (long) (off + 2) << 32 | (value | b << 7);
+        }
+        value |= (b & 0x7F) << 7;
+        off += 2;
+        for (int shift = 14; shift < 35; shift += 7) {
+            b = buf[off++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return (long) off << 32 | (value & 0xFFFFFFFFL);
+            }
+        }
+        throw new IllegalArgumentException("VarInt too big");
+    }
 
     public static byte[] reserveBytes(byte[] bytes) {
         byte[] newBytes = new byte[bytes.length];
@@ -240,39 +655,146 @@ public class Binary {
     }
 
     public static String bytesToHexString(byte[] src, boolean blank) {
-        StringBuilder stringBuilder = new StringBuilder("");
         if (src == null || src.length <= 0) {
             return null;
         }
-
-        for (byte b : src) {
-            if (!(stringBuilder.length() == 0) && blank) {
-                stringBuilder.append(" ");
-            }
-            int v = b & 0xFF;
-            String hv = Integer.toHexString(v);
-            if (hv.length() < 2) {
-                stringBuilder.append(0);
-            }
-            stringBuilder.append(hv);
-        }
-        return stringBuilder.toString().toUpperCase();
+        return new String(encodeHex(src, 0, src.length, blank ? " " : null));
     }
 
     public static byte[] hexStringToBytes(String hexString) {
         if (hexString == null || hexString.equals("")) {
             return null;
         }
-        String str = "0123456789ABCDEF";
-        hexString = hexString.toUpperCase().replace(" ", "");
-        int length = hexString.length() / 2;
-        char[] hexChars = hexString.toCharArray();
-        byte[] d = new byte[length];
-        for (int i = 0; i < length; i++) {
-            int pos = i * 2;
-            d[i] = (byte) (((byte) str.indexOf(hexChars[pos]) << 4) | ((byte) str.indexOf(hexChars[pos + 1])));
+        char[] chars = hexString.toCharArray();
+        return decodeHex(chars, 0, chars.length);
+    }
+
+    //Hex: upper case, with an optional separator between bytes
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final byte HEX_INVALID = -1;
+    private static final byte HEX_SEPARATOR = -2;
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, HEX_INVALID);
+        for (int i = 0; i < 16; i++) {
+            HEX_VALUES[HEX_DIGITS[i]] = (byte) i;
+            HEX_VALUES[Character.toLowerCase(HEX_DIGITS[i])] = (byte) i;
+        }
+        for (char c : " \t\r\n:-,".toCharArray()) {
+            HEX_VALUES[c] = HEX_SEPARATOR;
         }
-        return d;
+    }
+
+    public static int hexLength(int len, String separator) {
+        int sep = separator == null ? 0 : separator.length();
+        return len <= 0 ? 0 : len * 2 + (len - 1) * sep;
+    }
+
+    public static char[] encodeHex(byte[] src, int off, int len, String separator) {
+        char[] dst = new char[hexLength(len, separator)];
+        encodeHex(src, off, len, dst, 0, separator);
+        return dst;
+    }
+
+    /**
+     * Writes len bytes as hex into dst, separated by separator if it is not null, and returns the offset after the last
+     * written char.
+     */
+    public static int encodeHex(byte[] src, int off, int len, char[] dst, int dstOff, String separator) {
+        char[] digits = HEX_DIGITS;
+        int sep = separator == null ? 0 : separator.length();
+        int end = off + len;
+        if (len <= 0) {
+            return dstOff;
+        }
+        int v = src[off] & 0xFF;
+        dst[dstOff] = digits[v >>> 4];
+        dst[dstOff + 1] = digits[v & 0x0F];
+        dstOff += 2;
+        if (sep == 0) {
+            for (int i = off + 1; i < end; i++, dstOff += 2) {
+                v = src[i] & 0xFF;
+                dst[dstOff] = digits[v >>> 4];
+                dst[dstOff + 1] = digits[v & 0x0F];
+            }
+        } else if (sep == 1) {
+            char c = separator.charAt(0);
+            for (int i = off + 1; i < end; i++, dstOff += 3) {
+                v = src[i] & 0xFF;
+                dst[dstOff] = c;
+                dst[dstOff + 1] = digits[v >>> 4];
+                dst[dstOff + 2] = digits[v & 0x0F];
+            }
+        } else {
+            for (int i = off + 1; i < end; i++, dstOff += 2) {
+                separator.getChars(0, sep, dst, dstOff);
+                dstOff += sep;
+                v = src[i] & 0xFF;
+                dst[dstOff] = digits[v >>> 4];
+                dst[dstOff + 1] = digits[v & 0x0F];
+            }
+        }
+        return dstOff;
+    }
+
+    /**
+     * Streams len bytes as hex into out through a small char buffer, so large dumps are never built up as one string.
+     */
+    public static void appendHex(Appendable out, byte[] src, int off, int len, String separator) throws IOException {
+        int step = 2 + (separator == null ? 0 : separator.length());
+        char[] chunk = new char[Math.min(len, 512 / step) * step];
+        int end = off + len;
+        boolean first = true;
+        while (off < end) {
+            int n = Math.min(end - off, chunk.length / step);
+            int pos = 0;
+            if (!first && separator != null) {
+                separator.getChars(0, separator.length(), chunk, 0);
+                pos = separator.length();
+            }
+            pos = encodeHex(src, off, n, chunk, pos, separator);
+            if (out instanceof StringBuilder) {
+                ((StringBuilder) out).append(chunk, 0, pos);
+            } else if (out instanceof Writer) {
+                ((Writer) out).write(chunk, 0, pos);
+            } else {
+                out.append(CharBuffer.wrap(chunk, 0, pos));
+            }
+            off += n;
+            first = false;
+        }
+    }
+
+    /**
+     * Decodes hex digits of either case. Whitespace, ':', '-' and ',' are skipped as separators and a trailing single
+     * digit is ignored.
+     *
+     * @throws IllegalArgumentException if any other character is found
+     */
+    public static byte[] decodeHex(char[] src, int off, int len) {
+        byte[] values = HEX_VALUES;
+        byte[] out = new byte[len / 2];
+        int n = 0;
+        int high = -1;
+        for (int i = off; i < off + len; i++) {
+            char c = src[i];
+            int v = c < 128 ? values[c] : HEX_INVALID;
+            if (v < 0) {
+                if (v == HEX_SEPARATOR) {
+                    continue;
+                }
+                throw new IllegalArgumentException("Invalid hex character '" + c + "' at index " + i);
+            }
+            if (high < 0) {
+                high = v;
+            } else {
+                out[n++] = (byte) (high << 4 | v);
+                high = -1;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
     }
 
     public static byte[] subBytes(byte[] bytes, int start, int length) {
@@ -284,8 +806,29 @@ public class Binary {
         return subBytes(bytes, start, bytes.length - start);
     }
 
+    /**
+     * Returns a view of the given range that shares the array instead of copying it, clamped like subBytes.
+     */
+    public static ByteBuffer slice(byte[] bytes, int start, int length) {
+        int len = Math.min(bytes.length, start + length);
+        return ByteBuffer.wrap(bytes, start, len - start).slice();
+    }
+
+    public static ByteBuffer slice(byte[] bytes, int start) {
+        return slice(bytes, start, bytes.length - start);
+    }
+
+    /**
+     * Returns a view of length bytes from the given index of the buffer, independent of its position and limit.
+     */
+    public static ByteBuffer slice(ByteBuffer buf, int index, int length) {
+        ByteBuffer duplicate = buf.duplicate();
+        duplicate.limit(index + length).position(index);
+        return duplicate.slice().order(buf.order());
+    }
+
     public static byte[][] splitBytes(byte[] bytes, int chunkSize) {
-        byte[][] splits = new byte[(bytes.length + chunkSize - 1) / chunkSize][chunkSize];
+        byte[][] splits = new byte[(bytes.length + chunkSize - 1) / chunkSize][];
         int chunks = 0;
 
         for (int i = 0; i < bytes.length; i += chunkSize) {
@@ -300,16 +843,42 @@ public class Binary {
         return splits;
     }
 
+    /**
+     * Splits the array like splitBytes, but into views over it instead of copies.
+     */
+    public static ByteBuffer[] splitBuffers(byte[] bytes, int chunkSize) {
+        return splitBuffers(ByteBuffer.wrap(bytes), chunkSize);
+    }
+
+    /**
+     * Splits the remaining bytes of the buffer into views of at most chunkSize bytes, the last one holding the rest. The
+     * buffer's position is not changed.
+     */
+    public static ByteBuffer[] splitBuffers(ByteBuffer buf, int chunkSize) {
+        int start = buf.position();
+        int length = buf.remaining();
+        ByteBuffer[] splits = new ByteBuffer[(length + chunkSize - 1) / chunkSize];
+
+        for (int i = 0; i < splits.length; i++) {
+            int off = i * chunkSize;
+            splits[i] = slice(buf, start + off, Math.min(chunkSize, length - off));
+        }
+
+        return splits;
+    }
+
     public static byte[] appendBytes(byte[][] bytes) {
         int length = 0;
         for (byte[] b : bytes) {
             length += b.length;
         }
-        ByteBuffer buffer = ByteBuffer.allocate(length);
+        byte[] result = new byte[length];
+        int offset = 0;
         for (byte[] b : bytes) {
-            buffer.put(b);
+            System.arraycopy(b, 0, result, offset, b.length);
+            offset += b.length;
         }
-        return buffer.array();
+        return result;
     }
 
     public static byte[] appendBytes(byte byte1, byte[]... bytes2) {
@@ -317,12 +886,14 @@ public class Binary {
         for (byte[] bytes : bytes2) {
             length += bytes.length;
         }
-        ByteBuffer buffer = ByteBuffer.allocate(length);
-        buffer.put(byte1);
+        byte[] result = new byte[length];
+        result[0] = byte1;
+        int offset = 1;
         for (byte[] bytes : bytes2) {
-            buffer.put(bytes);
+            System.arraycopy(bytes, 0, result, offset, bytes.length);
+            offset += bytes.length;
         }
-        return buffer.array();
+        return result;
     }
 
     public static byte[] appendBytes(byte[] bytes1, byte[]... bytes2) {
@@ -330,12 +901,13 @@ public class Binary {
         for (byte[] bytes : bytes2) {
             length += bytes.length;
         }
-        ByteBuffer buffer = ByteBuffer.allocate(length);
-        buffer.put(bytes1);
+        byte[] result = Arrays.copyOf(bytes1, length);
+        int offset = bytes1.length;
         for (byte[] bytes : bytes2) {
-            buffer.put(bytes);
+            System.arraycopy(bytes, 0, result, offset, bytes.length);
+            offset += bytes.length;
         }
-        return buffer.array();
+        return result;
     }
 
 
@@ -0,0 +1,510 @@
+package io.nukkit.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Growable buffer for encoding and decoding packets. Writes append at the end of the data, reads consume it from the
+ * read offset, so a packet is built in one pass without the intermediate arrays of chaining {@link Binary} calls.
+ * <p>
+ * Streams created by {@link #retain} take their array from a pool of power of two sized arrays and must be given back
+ * with {@link #release()} once the encoded data is no longer used; the array returned by {@link #getRawBuffer()} must
+ * not be touched after that. A released stream is empty and may be written again. Streams are not thread safe.
+ */
+public class BinaryStream {
+    private static final byte[] EMPTY = new byte[0];
+    private static final int MIN_POOLED_SHIFT = 8;
+    private static final int MAX_POOLED_SHIFT = 20;
+    private static final int MAX_POOLED_PER_SIZE = 16;
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final ArrayDeque<byte[]>[] POOL = new ArrayDeque[MAX_POOLED_SHIFT - MIN_POOLED_SHIFT + 1];
+
+    static {
+        for (int i = 0; i < POOL.length; i++) {
+            POOL[i] = new ArrayDeque<>();
+        }
+    }
+
+    private byte[] buffer;
+    private int offset;
+    private int count;
+    private final boolean pooled;
+
+    public BinaryStream() {
+        this(new byte[32], 0);
+        this.count = 0;
+    }
+
+    /**
+     * Wraps the given data for reading, without copying it.
+     */
+    public BinaryStream(byte[] buffer) {
+        this(buffer, 0);
+    }
+
+    public BinaryStream(byte[] buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.count = buffer.length;
+        this.pooled = false;
+    }
+
+    private BinaryStream(int capacity) {
+        this.buffer = acquire(capacity);
+        this.pooled = true;
+    }
+
+    /**
+     * Gets a stream backed by a pooled array, to be given back with {@link #release()}.
+     */
+    public static BinaryStream retain() {
+        return new BinaryStream(1 << MIN_POOLED_SHIFT);
+    }
+
+    public static BinaryStream retain(int capacity) {
+        return new BinaryStream(capacity);
+    }
+
+    /**
+     * Gives the array of a pooled stream back to the pool and empties the stream.
+     */
+    public void release() {
+        if (this.pooled) {
+            recycle(this.buffer);
+            this.buffer = EMPTY;
+        }
+
+        this.reset();
+    }
+
+    public void reset() {
+        this.offset = 0;
+        this.count = 0;
+    }
+
+    public void setBuffer(byte[] buffer) {
+        this.setBuffer(buffer, 0);
+    }
+
+    /**
+     * Sets the data to read. Plain streams wrap the given array, pooled streams copy it into a pooled one.
+     */
+    public void setBuffer(byte[] buffer, int offset) {
+        if (this.pooled) {
+            recycle(this.buffer);
+            this.buffer = acquire(buffer.length);
+            System.arraycopy(buffer, 0, this.buffer, 0, buffer.length);
+        } else {
+            this.buffer = buffer;
+        }
+
+        this.offset = offset;
+        this.count = buffer.length;
+    }
+
+    public int getOffset() {
+        return this.offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public int getCount() {
+        return this.count;
+    }
+
+    public boolean feof() {
+        return this.offset >= this.count;
+    }
+
+    /**
+     * Gets a copy of the written data.
+     */
+    public byte[] getBuffer() {
+        return Arrays.copyOf(this.buffer, this.count);
+    }
+
+    /**
+     * Gets the backing array, valid up to {@link #getCount()}. Pooled arrays are only valid until the stream is released.
+     */
+    public byte[] getRawBuffer() {
+        return this.buffer;
+    }
+
+    /**
+     * Gets a view of the written data that shares the backing array.
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(this.buffer, 0, this.count).slice();
+    }
+
+    public byte[] get() {
+        return this.get(this.count - this.offset);
+    }
+
+    public byte[] get(int len) {
+        int off = this.advance(len);
+        return Arrays.copyOfRange(this.buffer, off, off + len);
+    }
+
+    public void put(byte[] bytes) {
+        this.put(bytes, 0, bytes.length);
+    }
+
+    public void put(byte[] bytes, int off, int len) {
+        int pos = this.grow(len);
+        System.arraycopy(bytes, off, this.buffer, pos, len);
+    }
+
+    public int getByte() {
+        return this.buffer[this.advance(1)] & 0xFF;
+    }
+
+    public void putByte(byte b) {
+        int off = this.grow(1);
+        this.buffer[off] = b;
+    }
+
+    public boolean getBoolean() {
+        return this.getByte() == 0x01;
+    }
+
+    public void putBoolean(boolean b) {
+        this.putByte(Binary.writeBool(b));
+    }
+
+    public int getShort() {
+        return Binary.readShort(this.buffer, this.advance(2));
+    }
+
+    public short getSignedShort() {
+        return Binary.readSignedShort(this.buffer, this.advance(2));
+    }
+
+    public void putShort(int s) {
+        int off = this.grow(2);
+        Binary.writeShort(this.buffer, off, s);
+    }
+
+    public int getLShort() {
+        return Binary.readLShort(this.buffer, this.advance(2));
+    }
+
+    public short getSignedLShort() {
+        return Binary.readSignedLShort(this.buffer, this.advance(2));
+    }
+
+    public void putLShort(int s) {
+        int off = this.grow(2);
+        Binary.writeLShort(this.buffer, off, s);
+    }
+
+    public int getTriad() {
+        return Binary.readTriad(this.buffer, this.advance(3));
+    }
+
+    public void putTriad(int triad) {
+        int off = this.grow(3);
+        Binary.writeTriad(this.buffer, off, triad);
+    }
+
+    public int getLTriad() {
+        return Binary.readLTriad(this.buffer, this.advance(3));
+    }
+
+    public void putLTriad(int triad) {
+        int off = this.grow(3);
+        Binary.writeLTriad(this.buffer, off, triad);
+    }
+
+    public int getInt() {
+        return Binary.readInt(this.buffer, this.advance(4));
+    }
+
+    public void putInt(int i) {
+        int off = this.grow(4);
+        Binary.writeInt(this.buffer, off, i);
+    }
+
+    public int getLInt() {
+        return Binary.readLInt(this.buffer, this.advance(4));
+    }
+
+    public void putLInt(int i) {
+        int off = this.grow(4);
+        Binary.writeLInt(this.buffer, off, i);
+    }
+
+    public long getLong() {
+        return Binary.readLong(this.buffer, this.advance(8));
+    }
+
+    public void putLong(long l) {
+        int off = this.grow(8);
+        Binary.writeLong(this.buffer, off, l);
+    }
+
+    public long getLLong() {
+        return Binary.readLLong(this.buffer, this.advance(8));
+    }
+
+    public void putLLong(long l) {
+        int off = this.grow(8);
+        Binary.writeLLong(this.buffer, off, l);
+    }
+
+    public float getFloat() {
+        return Binary.readFloat(this.buffer, this.advance(4));
+    }
+
+    public void putFloat(float f) {
+        int off = this.grow(4);
+        Binary.writeFloat(this.buffer, off, f);
+    }
+
+    public float getLFloat() {
+        return Binary.readLFloat(this.buffer, this.advance(4));
+    }
+
+    public void putLFloat(float f) {
+        int off = this.grow(4);
+        Binary.writeLFloat(this.buffer, off, f);
+    }
+
+    public double getDouble() {
+        return Binary.readDouble(this.buffer, this.advance(8));
+    }
+
+    public void putDouble(double d) {
+        int off = this.grow(8);
+        Binary.writeDouble(this.buffer, off, d);
+    }
+
+    public double getLDouble() {
+        return Binary.readLDouble(this.buffer, this.advance(8));
+    }
+
+    public void putLDouble(double d) {
+        int off = this.grow(8);
+        Binary.writeLDouble(this.buffer, off, d);
+    }
+
+    public UUID getUUID() {
+        return Binary.readUUID(this.buffer, this.advance(16));
+    }
+
+    public void putUUID(UUID uuid) {
+        int off = this.grow(16);
+        Binary.writeUUID(this.buffer, off, uuid);
+    }
+
+    public int getUnsignedVarInt() {
+        if (this.offset >= this.count) {
+            throw underflow(1);
+        }
+
+        long result = Binary.decodeVarInt(this.buffer, this.offset);
+        int end = (int) (result >>> 32);
+
+        if (end > this.count) {
+            throw underflow(end - this.offset);
+        }
+
+        this.offset = end;
+        return (int) result;
+    }
+
+    public void putUnsignedVarInt(int v) {
+        this.ensureCapacity(this.count + 5);
+        this.count = Binary.writeUnsignedVarInt(this.buffer, this.count, v);
+    }
+
+    public int getVarInt() {
+        return Binary.decodeZigZag32(this.getUnsignedVarInt());
+    }
+
+    public void putVarInt(int v) {
+        this.putUnsignedVarInt(Binary.encodeZigZag32(v));
+    }
+
+    public long getUnsignedVarLong() {
+        long value = 0L;
+
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = this.buffer[this.advance(1)];
+            value |= (long) (b & 0x7F) << shift;
+
+            if (b >= 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("VarLong too big");
+    }
+
+    public void putUnsignedVarLong(long v) {
+        this.ensureCapacity(this.count + 10);
+        this.count = Binary.writeUnsignedVarLong(this.buffer, this.count, v);
+    }
+
+    public long getVarLong() {
+        return Binary.decodeZigZag64(this.getUnsignedVarLong());
+    }
+
+    public void putVarLong(long v) {
+        this.putUnsignedVarLong(Binary.encodeZigZag64(v));
+    }
+
+    /**
+     * Reads a UTF-8 string prefixed with its length in bytes as an unsigned var-int.
+     */
+    public String getString() {
+        int len = this.getUnsignedVarInt();
+        int off = this.advance(len);
+        return new String(this.buffer, off, len, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a string as {@link #getString()} reads it, encoding straight into the buffer. Unpaired surrogates are
+     * written as '?', like String.getBytes does.
+     */
+    public void putString(String s) {
+        int length = s.length();
+        int utf = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+
+            if (c < 0x80) {
+                utf++;
+            } else if (c < 0x800) {
+                utf += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                utf += 4;
+                i++;
+            } else {
+                utf += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+
+        this.putUnsignedVarInt(utf);
+        int pos = this.grow(utf);
+        byte[] buf = this.buffer;
+
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+
+            if (c < 0x80) {
+                buf[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | c >> 6);
+                buf[pos++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[pos++] = (byte) (0xF0 | cp >> 18);
+                buf[pos++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                buf[pos++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                buf[pos++] = (byte) (0x80 | cp & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                buf[pos++] = '?';
+            } else {
+                buf[pos++] = (byte) (0xE0 | c >> 12);
+                buf[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buf[pos++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    public byte[] getByteArray() {
+        return this.get(this.getUnsignedVarInt());
+    }
+
+    public void putByteArray(byte[] b) {
+        this.putUnsignedVarInt(b.length);
+        this.put(b);
+    }
+
+    /**
+     * Reserves len bytes at the end of the data and returns their offset.
+     */
+    private int grow(int len) {
+        int off = this.count;
+        this.ensureCapacity(off + len);
+        this.count = off + len;
+        return off;
+    }
+
+    /**
+     * Consumes len bytes from the read offset and returns the offset they start at.
+     */
+    private int advance(int len) {
+        int off = this.offset;
+
+        if (len < 0 || len > this.count - off) {
+            throw underflow(len);
+        }
+
+        this.offset = off + len;
+        return off;
+    }
+
+    private IndexOutOfBoundsException underflow(int len) {
+        return new IndexOutOfBoundsException("Tried to read " + len + " bytes at offset " + this.offset + ", but only " + (this.count - this.offset) + " are available");
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity < 0) {
+            throw new OutOfMemoryError();
+        }
+
+        if (minCapacity > this.buffer.length) {
+            byte[] old = this.buffer;
+
+            if (this.pooled) {
+                this.buffer = acquire(Math.max(minCapacity, old.length << 1));
+                System.arraycopy(old, 0, this.buffer, 0, this.count);
+                recycle(old);
+            } else {
+                this.buffer = Arrays.copyOf(old, Math.max(minCapacity, old.length << 1));
+            }
+        }
+    }
+
+    private static byte[] acquire(int capacity) {
+        int shift = Math.max(MIN_POOLED_SHIFT, 32 - Integer.numberOfLeadingZeros(capacity - 1));
+
+        if (shift > MAX_POOLED_SHIFT) {
+            return new byte[capacity];
+        }
+
+        ArrayDeque<byte[]> pool = POOL[shift - MIN_POOLED_SHIFT];
+        byte[] bytes;
+
+        synchronized (pool) {
+            bytes = pool.pollLast();
+        }
+
+        return bytes != null ? bytes : new byte[1 << shift];
+    }
+
+    private static void recycle(byte[] bytes) {
+        int length = bytes.length;
+        int shift = 31 - Integer.numberOfLeadingZeros(length);
+
+        if (length != 1 << shift || shift < MIN_POOLED_SHIFT || shift > MAX_POOLED_SHIFT) {
+            return;
+        }
+
+        ArrayDeque<byte[]> pool = POOL[shift - MIN_POOLED_SHIFT];
+
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED_PER_SIZE) {
+                pool.addLast(bytes);
+            }
+        }
+    }
+}
@@ -8,24 +8,57 @@ import javax.annotation.Nullable;
 import java.util.Arrays;
 import java.util.Iterator;
 
+/**
+ * Bidirectional map between objects, compared by identity, and non-negative int ids. Objects are kept in an open
+ * addressing table with linear probing whose capacity is a power of two, so slots are found by masking the mixed
+ * identity hash; ids index straight into a separate array. The table is kept at most half full, which keeps the probe
+ * sequences of both hits and misses short at the cost of a few unused slots.
+ */
 public class IntIdentityHashBiMap<K> implements IObjectIntIterable<K> {
-    private static final Object EMPTY = null;
+    private static final float LOAD_FACTOR = 0.5F;
     private K[] values;
     private int[] intKeys;
+    private int mask;
+    private int threshold;
     private K[] byId;
+    /**
+     * Lowest id that may be free. Ids below it are all taken; it only moves back when {@link #put} moves an object off a
+     * lower id.
+     */
     private int nextFreeIndex;
     private int mapSize;
 
     @SuppressWarnings("unchecked")
     public IntIdentityHashBiMap(int initialCapacity) {
-        initialCapacity = (int) ((float) initialCapacity / 0.8F);
-        this.values = (K[]) (new Object[initialCapacity]);
-        this.intKeys = new int[initialCapacity];
-        this.byId = (K[]) (new Object[initialCapacity]);
+        int capacity = tableSize(initialCapacity);
+        this.values = (K[]) (new Object[capacity]);
+        this.intKeys = new int[capacity];
+        this.mask = capacity - 1;
+        this.threshold = (int) ((float) capacity * LOAD_FACTOR);
+        this.byId = (K[]) (new Object[Math.max(initialCapacity, 16)]);
     }
 
     public int getId(@Nullable K object) {
-        return this.getValue(this.getIndex(object, this.hashObject(object)));
+        if (object == null) {
+            return -1;
+        }
+
+        K[] ak = this.values;
+        int i = this.hashObject(object);
+
+        while (true) {
+            K k = ak[i];
+
+            if (k == object) {
+                return this.intKeys[i];
+            }
+
+            if (k == null) {
+                return -1;
+            }
+
+            i = i + 1 & this.mask;
+        }
     }
 
     @Nullable
@@ -33,10 +66,6 @@ public class IntIdentityHashBiMap<K> implements IObjectIntIterable<K> {
         return id >= 0 && id < this.byId.length ? this.byId[id] : null;
     }
 
-    private int getValue(int intKey) {
-        return intKey == -1 ? -1 : this.intKeys[intKey];
-    }
-
     /**
      * Adds the given object while expanding this map
      */
@@ -55,94 +84,81 @@ public class IntIdentityHashBiMap<K> implements IObjectIntIterable<K> {
     }
 
     /**
-     * Rehashes the map to the new capacity
+     * Puts the provided object value with the integer key. An object that is already present is moved to the new key.
      */
-    @SuppressWarnings("unchecked")
-    private void grow(int capacity) {
-        K[] ak = this.values;
-        int[] aint = this.intKeys;
-        this.values = (K[]) (new Object[capacity]);
-        this.intKeys = new int[capacity];
-        this.byId = (K[]) (new Object[capacity]);
-        this.nextFreeIndex = 0;
-        this.mapSize = 0;
-
-        for (int i = 0; i < ak.length; ++i) {
-            if (ak[i] != null) {
-                this.put(ak[i], aint[i]);
-            }
+    public void put(K object, int intKey) {
+        if (intKey >= this.byId.length) {
+            this.byId = Arrays.copyOf(this.byId, Math.max(this.byId.length << 1, Integer.highestOneBit(intKey) << 1));
         }
-    }
 
-    /**
-     * Puts the provided object value with the integer key.
-     */
-    public void put(K object, int intKey) {
-        int i = Math.max(intKey, this.mapSize + 1);
+        int i = this.hashObject(object);
+
+        while (this.values[i] != null) {
+            if (this.values[i] == object) {
+                int oldKey = this.intKeys[i];
 
-        if ((float) i >= (float) this.values.length * 0.8F) {
-            int j;
+                // Another object may have been put on the old id since
+                if (this.byId[oldKey] == object) {
+                    this.byId[oldKey] = null;
+                    this.nextFreeIndex = Math.min(this.nextFreeIndex, oldKey);
+                }
 
-            //noinspection StatementWithEmptyBody
-            for (j = this.values.length << 1; j < intKey; j <<= 1) {
+                this.intKeys[i] = intKey;
+                this.byId[intKey] = object;
+                return;
             }
 
-            this.grow(j);
+            i = i + 1 & this.mask;
         }
 
-        int k = this.findEmpty(this.hashObject(object));
-        this.values[k] = object;
-        this.intKeys[k] = intKey;
+        this.values[i] = object;
+        this.intKeys[i] = intKey;
         this.byId[intKey] = object;
-        ++this.mapSize;
+
+        if (++this.mapSize > this.threshold) {
+            this.grow(this.values.length << 1);
+        }
 
         if (intKey == this.nextFreeIndex) {
             ++this.nextFreeIndex;
         }
     }
 
-    private int hashObject(@Nullable K object) {
-        return (MathHelper.hash(System.identityHashCode(object)) & Integer.MAX_VALUE) % this.values.length;
-    }
+    /**
+     * Rehashes the object table to the new capacity. Entries are moved directly, so this never recurses.
+     */
+    @SuppressWarnings("unchecked")
+    private void grow(int capacity) {
+        K[] ak = this.values;
+        int[] aint = this.intKeys;
+        this.values = (K[]) (new Object[capacity]);
+        this.intKeys = new int[capacity];
+        this.mask = capacity - 1;
+        this.threshold = (int) ((float) capacity * LOAD_FACTOR);
 
-    private int getIndex(@Nullable K object, int hash) {
-        for (int i = hash; i < this.values.length; ++i) {
-            if (this.values[i] == object) {
-                return i;
-            }
+        for (int i = 0; i < ak.length; ++i) {
+            K k = ak[i];
 
-            if (this.values[i] == EMPTY) {
-                return -1;
-            }
-        }
+            if (k != null) {
+                int j = this.hashObject(k);
 
-        for (int j = 0; j < hash; ++j) {
-            if (this.values[j] == object) {
-                return j;
-            }
+                while (this.values[j] != null) {
+                    j = j + 1 & this.mask;
+                }
 
-            if (this.values[j] == EMPTY) {
-                return -1;
+                this.values[j] = k;
+                this.intKeys[j] = aint[i];
             }
         }
-
-        return -1;
     }
 
-    private int findEmpty(int hash) {
-        for (int i = hash; i < this.values.length; ++i) {
-            if (this.values[i] == EMPTY) {
-                return i;
-            }
-        }
-
-        for (int j = 0; j < hash; ++j) {
-            if (this.values[j] == EMPTY) {
-                return j;
-            }
-        }
+    private int hashObject(K object) {
+        return MathHelper.hash(System.identityHashCode(object)) & this.mask;
+    }
 
-        throw new RuntimeException("Overflowed :(");
+    private static int tableSize(int expected) {
+        int capacity = (int) Math.min((long) ((float) Math.max(expected, 2) / LOAD_FACTOR), 1L << 30);
+        return Integer.highestOneBit(capacity - 1) << 1;
     }
 
     public Iterator<K> iterator() {
@@ -2,29 +2,70 @@ package io.nukkit.util;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.MapMaker;
 import com.google.gson.*;
 
 import java.lang.reflect.Type;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentMap;
 
 public class ResourceLocation implements Comparable<ResourceLocation> {
+    private static final String DEFAULT_DOMAIN = "minecraft";
+    /**
+     * Canonical instances by the exact string they were parsed from, so a repeated lookup of the same name allocates
+     * nothing. Values are weak; an entry goes away once nobody holds its location anymore.
+     */
+    private static final ConcurrentMap<String, ResourceLocation> BY_NAME = new MapMaker().weakValues().makeMap();
+    private static final Interner<ResourceLocation> INTERNER = Interners.newWeakInterner();
     protected final String resourceDomain;
     protected final String resourcePath;
+    private final int hash;
 
     protected ResourceLocation(int intPlaceHolder, String... resourceName) {
-        this.resourceDomain = Strings.isNullOrEmpty(resourceName[0]) ? "minecraft" : resourceName[0].toLowerCase(Locale.ROOT);
-        this.resourcePath = resourceName[1].toLowerCase(Locale.ROOT);
+        this.resourceDomain = Strings.isNullOrEmpty(resourceName[0]) ? DEFAULT_DOMAIN : toLowerCase(resourceName[0]);
+        this.resourcePath = toLowerCase(resourceName[1]);
         Preconditions.checkNotNull(this.resourcePath);
+        this.hash = 31 * this.resourceDomain.hashCode() + this.resourcePath.hashCode();
     }
 
     public ResourceLocation(String resourceName) {
-        this(0, splitObjectName(resourceName));
+        int i = resourceName.indexOf(58);
+
+        if (i == DEFAULT_DOMAIN.length() && resourceName.startsWith(DEFAULT_DOMAIN)) {
+            this.resourceDomain = DEFAULT_DOMAIN;
+        } else {
+            this.resourceDomain = i > 1 ? toLowerCase(resourceName.substring(0, i)) : DEFAULT_DOMAIN;
+        }
+
+        this.resourcePath = toLowerCase(i >= 0 ? resourceName.substring(i + 1) : resourceName);
+        this.hash = 31 * this.resourceDomain.hashCode() + this.resourcePath.hashCode();
     }
 
     public ResourceLocation(String resourceDomainIn, String resourcePathIn) {
         this(0, resourceDomainIn, resourcePathIn);
     }
 
+    /**
+     * Gets the canonical instance for the given name, parsed like {@link #ResourceLocation(String)}. Canonical
+     * instances compare equal by identity, which makes them the cheapest registry keys.
+     */
+    public static ResourceLocation of(String resourceName) {
+        ResourceLocation resourcelocation = BY_NAME.get(resourceName);
+
+        if (resourcelocation == null) {
+            resourcelocation = INTERNER.intern(new ResourceLocation(resourceName));
+            BY_NAME.putIfAbsent(resourceName, resourcelocation);
+        }
+
+        return resourcelocation;
+    }
+
+    public static ResourceLocation of(String resourceDomainIn, String resourcePathIn) {
+        return INTERNER.intern(new ResourceLocation(resourceDomainIn, resourcePathIn));
+    }
+
     /**
      * Splits an object name (such as minecraft:apple) into the domain and path parts and returns these as an array of
      * length 2. If no colon is present in the passed value the returned array will contain {null, toSplit}.
@@ -44,6 +85,21 @@ public class ResourceLocation implements Comparable<ResourceLocation> {
         return astring;
     }
 
+    /**
+     * Lower cases the given string, returning it unchanged when it has no upper case or non ASCII characters.
+     */
+    private static String toLowerCase(String s) {
+        for (int i = 0; i < s.length(); ++i) {
+            char c0 = s.charAt(i);
+
+            if (c0 >= 'A' && c0 <= 'Z' || c0 >= 128) {
+                return s.toLowerCase(Locale.ROOT);
+            }
+        }
+
+        return s;
+    }
+
     public String getResourcePath() {
         return this.resourcePath;
     }
@@ -63,12 +119,12 @@ public class ResourceLocation implements Comparable<ResourceLocation> {
             return false;
         } else {
             ResourceLocation resourcelocation = (ResourceLocation) obj;
-            return this.resourceDomain.equals(resourcelocation.resourceDomain) && this.resourcePath.equals(resourcelocation.resourcePath);
+            return this.hash == resourcelocation.hash && this.resourceDomain.equals(resourcelocation.resourceDomain) && this.resourcePath.equals(resourcelocation.resourcePath);
         }
     }
 
     public int hashCode() {
-        return 31 * this.resourceDomain.hashCode() + this.resourcePath.hashCode();
+        return this.hash;
     }
 
     public int compareTo(ResourceLocation location) {
@@ -83,7 +139,7 @@ public class ResourceLocation implements Comparable<ResourceLocation> {
 
     public static class Serializer implements JsonDeserializer<ResourceLocation>, JsonSerializer<ResourceLocation> {
         public ResourceLocation deserialize(JsonElement element, Type type, JsonDeserializationContext context) throws JsonParseException {
-            return new ResourceLocation(JsonUtils.getString(element, "location"));
+            return ResourceLocation.of(JsonUtils.getString(element, "location"));
 
         }
 
@@ -0,0 +1,16 @@
+package io.nukkit.util.registry;
+
+import javax.annotation.Nullable;
+
+/**
+ * Optionally implemented by registered values to cache their own {@link RegistryEntry}. The registry stores the entry
+ * on registration, so code that knows it handles such values reads their ID and name with a field read instead of a
+ * hash lookup. The registry lookups themselves do not test for this interface, since a failing instanceof check
+ * against an interface costs more than the lookup it would save.
+ */
+public interface IRegistryEntryHolder<K, V> {
+    @Nullable
+    RegistryEntry<K, V> getRegistryEntry();
+
+    void setRegistryEntry(RegistryEntry<K, V> entry);
+}
@@ -0,0 +1,202 @@
+package io.nukkit.util.registry;
+
+import com.google.common.collect.Maps;
+import io.nukkit.util.math.MathHelper;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable perfect hash over a fixed set of keys, used by frozen registries. Keys are first spread into small buckets;
+ * each bucket then gets a seed, found while building, that sends all of its keys to distinct slots (hash and
+ * displace). A lookup is therefore one hash, two array reads and one equals call, without any probing. Callers keep
+ * their values in arrays indexed by the index returned by {@link #indexOf}.
+ * <p>
+ * Keys whose hash codes are equal cannot be told apart by any seed, so all but the first of them go to a small overflow
+ * map that is only consulted when the slot does not match.
+ */
+final class PerfectHashTable {
+    private static final int MAX_SEED = 1 << 16;
+    private final Object[] keys;
+    private final int[] seeds;
+    private final int bucketShift;
+    private final int mask;
+    @Nullable
+    private final Map<Object, Integer> overflow;
+
+    private PerfectHashTable(Object[] keys, int[] seeds, int bucketShift, @Nullable Map<Object, Integer> overflow) {
+        this.keys = keys;
+        this.seeds = seeds;
+        this.bucketShift = bucketShift;
+        this.mask = keys.length - 1;
+        this.overflow = overflow;
+    }
+
+    /**
+     * Gets the index of the given key, or -1 if it is not in the table.
+     */
+    int indexOf(@Nullable Object key) {
+        if (key == null) {
+            return -1;
+        }
+
+        int h = key.hashCode();
+        int i = slot(h, this.seeds[bucket(h, this.bucketShift)], this.mask);
+        Object k = this.keys[i];
+
+        if (k == key || key.equals(k)) {
+            return i;
+        }
+
+        return this.overflow == null ? -1 : this.overflow.getOrDefault(key, -1);
+    }
+
+    /**
+     * Gets the number of indices, which bounds the values returned by {@link #indexOf}.
+     */
+    int capacity() {
+        return this.keys.length + (this.overflow == null ? 0 : this.overflow.size());
+    }
+
+    private static int bucket(int h, int shift) {
+        return h * 0x9E3779B9 >>> shift;
+    }
+
+    private static int slot(int h, int seed, int mask) {
+        return MathHelper.hash(h ^ seed) & mask;
+    }
+
+    /**
+     * Builds a table over the given distinct, non-null keys.
+     */
+    static PerfectHashTable build(List<?> keys) {
+        int size = keys.size();
+        int[] hashes = new int[size];
+
+        for (int i = 0; i < size; ++i) {
+            hashes[i] = keys.get(i).hashCode();
+        }
+
+        for (int slots = Math.max(8, Integer.highestOneBit(Math.max(size, 2) - 1) << 2); ; slots <<= 1) {
+            PerfectHashTable table = tryBuild(keys, hashes, slots);
+
+            if (table != null) {
+                return table;
+            }
+        }
+    }
+
+    /**
+     * Places the buckets largest first into a table with the given number of slots, a quarter as many buckets and so
+     * a load factor of at most one half.
+     */
+    @Nullable
+    private static PerfectHashTable tryBuild(List<?> keys, int[] hashes, int slots) {
+        int size = hashes.length;
+        int buckets = slots >>> 2;
+        int shift = 32 - Integer.numberOfTrailingZeros(buckets);
+        int mask = slots - 1;
+        int[] start = new int[buckets + 1];
+
+        for (int h : hashes) {
+            ++start[bucket(h, shift) + 1];
+        }
+
+        int largest = 0;
+
+        for (int b = 0; b < buckets; ++b) {
+            largest = Math.max(largest, start[b + 1]);
+            start[b + 1] += start[b];
+        }
+
+        int[] members = new int[size];
+        int[] fill = new int[buckets];
+
+        for (int i = 0; i < size; ++i) {
+            int b = bucket(hashes[i], shift);
+            members[start[b] + fill[b]++] = i;
+        }
+
+        Object[] akeys = new Object[slots];
+        int[] seeds = new int[buckets];
+        Map<Object, Integer> overflow = null;
+        int[] placed = new int[largest];
+
+        for (int count = largest; count > 0; --count) {
+            for (int b = 0; b < buckets; ++b) {
+                if (start[b + 1] - start[b] != count) {
+                    continue;
+                }
+
+                int n = 0;
+
+                for (int j = start[b]; j < start[b + 1]; ++j) {
+                    int i = members[j];
+                    boolean duplicate = false;
+
+                    for (int k = start[b]; k < start[b] + n; ++k) {
+                        duplicate |= hashes[members[k]] == hashes[i];
+                    }
+
+                    if (duplicate) {
+                        if (overflow == null) {
+                            overflow = Maps.newHashMap();
+                        }
+
+                        overflow.put(keys.get(i), -1);
+                    } else {
+                        members[start[b] + n++] = i;
+                    }
+                }
+
+                int seed = findSeed(akeys, hashes, members, start[b], n, mask, placed);
+
+                if (seed < 0) {
+                    return null;
+                }
+
+                seeds[b] = seed;
+
+                for (int j = 0; j < n; ++j) {
+                    akeys[placed[j]] = keys.get(members[start[b] + j]);
+                }
+            }
+        }
+
+        if (overflow != null) {
+            int index = slots;
+
+            for (Map.Entry<Object, Integer> entry : overflow.entrySet()) {
+                entry.setValue(index++);
+            }
+        }
+
+        return new PerfectHashTable(akeys, seeds, shift, overflow);
+    }
+
+    private static int findSeed(Object[] akeys, int[] hashes, int[] members, int from, int n, int mask, int[] placed) {
+        seeds:
+        for (int seed = 0; seed < MAX_SEED; ++seed) {
+            for (int j = 0; j < n; ++j) {
+                int slot = slot(hashes[members[from + j]], seed, mask);
+
+                if (akeys[slot] != null) {
+                    continue seeds;
+                }
+
+                for (int k = 0; k < j; ++k) {
+                    if (placed[k] == slot) {
+                        continue seeds;
+                    }
+                }
+
+                placed[j] = slot;
+            }
+
+            return seed;
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,95 @@
+package io.nukkit.util.registry;
+
+import com.google.common.base.Preconditions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry that may be written from plugin loader threads while other threads read it. Reads go straight to a
+ * {@link ConcurrentHashMap} without locking; writes, which are rare, are serialized on the registry so that the cached
+ * array used by {@link #getRandomObject} is never rebuilt from a map that is being changed at the same time.
+ * Iteration and {@link #getKeys()} are weakly consistent.
+ */
+public class RegistryConcurrent<K, V> implements IRegistry<K, V> {
+    private static final Logger LOGGER = LogManager.getLogger();
+    protected final Map<K, V> registryObjects = new ConcurrentHashMap<>();
+    private volatile Object[] values;
+
+    @Nullable
+    public V getObject(@Nullable K name) {
+        return name == null ? null : this.registryObjects.get(name);
+    }
+
+    /**
+     * Register an object on this registry.
+     */
+    public synchronized void putObject(K key, V value) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(value);
+
+        if (this.registryObjects.put(key, value) != null) {
+            LOGGER.debug("Adding duplicate key '{}' to registry", key);
+        }
+
+        this.values = null;
+    }
+
+    public Set<K> getKeys() {
+        return Collections.unmodifiableSet(this.registryObjects.keySet());
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V getRandomObject(Random random) {
+        Object[] aobject = this.values;
+
+        if (aobject == null) {
+            aobject = this.rebuildValues();
+
+            if (aobject.length == 0) {
+                return null;
+            }
+        }
+
+        return (V) aobject[random.nextInt(aobject.length)];
+    }
+
+    /**
+     * Rebuilds the cached values while holding the write lock, so no write can slip in between reading the map and
+     * publishing the array.
+     */
+    private synchronized Object[] rebuildValues() {
+        Object[] aobject = this.values;
+
+        if (aobject == null) {
+            Collection<V> collection = this.registryObjects.values();
+            aobject = collection.toArray(new Object[collection.size()]);
+
+            if (aobject.length != 0) {
+                this.values = aobject;
+            }
+        }
+
+        return aobject;
+    }
+
+    /**
+     * Does this registry contain an entry for the given key?
+     */
+    public boolean containsKey(K key) {
+        return key != null && this.registryObjects.containsKey(key);
+    }
+
+    public Iterator<V> iterator() {
+        return Collections.unmodifiableCollection(this.registryObjects.values()).iterator();
+    }
+}
@@ -0,0 +1,39 @@
+package io.nukkit.util.registry;
+
+/**
+ * Key, numeric ID and value of one object registered in a {@link RegistryNamespaced}, kept together so that code
+ * serializing a value finds both its name and its ID with a single lookup.
+ */
+public final class RegistryEntry<K, V> {
+    private final RegistryNamespaced<K, V> registry;
+    private final int id;
+    private final K key;
+    private final V value;
+
+    RegistryEntry(RegistryNamespaced<K, V> registry, int id, K key, V value) {
+        this.registry = registry;
+        this.id = id;
+        this.key = key;
+        this.value = value;
+    }
+
+    public RegistryNamespaced<K, V> getRegistry() {
+        return this.registry;
+    }
+
+    public int getId() {
+        return this.id;
+    }
+
+    public K getKey() {
+        return this.key;
+    }
+
+    public V getValue() {
+        return this.value;
+    }
+
+    public String toString() {
+        return this.key + "#" + this.id;
+    }
+}
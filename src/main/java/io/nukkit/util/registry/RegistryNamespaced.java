@@ -1,26 +1,67 @@
 package io.nukkit.util.registry;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import io.nukkit.util.IObjectIntIterable;
 import io.nukkit.util.IntIdentityHashBiMap;
 
 import javax.annotation.Nullable;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
 
 public class RegistryNamespaced<K, V> extends RegistrySimple<K, V> implements IObjectIntIterable<V> {
     protected final IntIdentityHashBiMap<V> underlyingIntegerMap = new IntIdentityHashBiMap<>(256);
     protected final Map<V, K> inverseObjectRegistry;
+    /**
+     * Entries of the objects registered with an ID, indexed by that ID.
+     */
+    private RegistryEntry<K, V>[] entriesById = newEntryArray(256);
 
     public RegistryNamespaced() {
         //noinspection unchecked
         this.inverseObjectRegistry = ((BiMap) this.registryObjects).inverse();
     }
 
+    @SuppressWarnings("unchecked")
     public void register(int id, K key, V value) {
+        Preconditions.checkState(!this.frozen, "Tried to add %s to a frozen registry", key);
         this.underlyingIntegerMap.put(value, id);
         this.putObject(key, value);
+        RegistryEntry<K, V> entry = new RegistryEntry<>(this, id, key, value);
+
+        if (id >= this.entriesById.length) {
+            this.entriesById = Arrays.copyOf(this.entriesById, Math.max(this.entriesById.length << 1, Integer.highestOneBit(id) << 1));
+        }
+
+        this.entriesById[id] = entry;
+
+        if (value instanceof IRegistryEntryHolder) {
+            ((IRegistryEntryHolder<K, V>) value).setRegistryEntry(entry);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K, V> RegistryEntry<K, V>[] newEntryArray(int length) {
+        return (RegistryEntry<K, V>[]) new RegistryEntry[length];
+    }
+
+    /**
+     * Gets the entry holding the key and ID of the given object, or null if it was not registered with an ID.
+     */
+    @Nullable
+    public RegistryEntry<K, V> getEntry(@Nullable V value) {
+        RegistryEntry<K, V> entry = this.getEntryById(this.underlyingIntegerMap.getId(value));
+        return entry != null && entry.getValue() == value ? entry : null;
+    }
+
+    /**
+     * Gets the entry registered with the given ID.
+     */
+    @Nullable
+    public RegistryEntry<K, V> getEntryById(int id) {
+        return id >= 0 && id < this.entriesById.length ? this.entriesById[id] : null;
     }
 
     @Override
@@ -39,7 +80,8 @@ public class RegistryNamespaced<K, V> extends RegistrySimple<K, V> implements IO
      */
     @Nullable
     public K getNameForObject(V value) {
-        return this.inverseObjectRegistry.get(value);
+        RegistryEntry<K, V> entry = this.getEntry(value);
+        return entry != null ? entry.getKey() : this.inverseObjectRegistry.get(value);
     }
 
     /**
@@ -22,11 +22,12 @@ public class RegistryNamespacedDefaultedByKey<K, V> extends RegistryNamespaced<K
     }
 
     public void register(int id, K key, V value) {
+        // Only take the default once registered, so a frozen registry that rejects it keeps the old one
+        super.register(id, key, value);
+
         if (this.defaultValueKey.equals(key)) {
             this.defaultValue = value;
         }
-
-        super.register(id, key, value);
     }
 
     /**
@@ -12,13 +12,28 @@ public class RegistrySimple<K, V> implements IRegistry<K, V> {
     private static final Logger LOGGER = LogManager.getLogger();
     protected final Map<K, V> registryObjects = this.createUnderlyingMap();
     private Object[] values;
+    /**
+     * Whether {@link #freeze()} was called, after which objects can no longer be added.
+     */
+    protected boolean frozen;
+    @Nullable
+    private PerfectHashTable frozenKeys;
+    private Object[] frozenValues;
 
     protected Map<K, V> createUnderlyingMap() {
         return Maps.newHashMap();
     }
 
     @Nullable
+    @SuppressWarnings("unchecked")
     public V getObject(@Nullable K name) {
+        PerfectHashTable table = this.frozenKeys;
+
+        if (table != null) {
+            int i = table.indexOf(name);
+            return i < 0 ? null : (V) this.frozenValues[i];
+        }
+
         return this.registryObjects.get(name);
     }
 
@@ -28,6 +43,7 @@ public class RegistrySimple<K, V> implements IRegistry<K, V> {
     public void putObject(K key, V value) {
         Preconditions.checkNotNull(key);
         Preconditions.checkNotNull(value);
+        Preconditions.checkState(!this.frozen, "Tried to add %s to a frozen registry", key);
         this.values = null;
 
         if (this.registryObjects.containsKey(key)) {
@@ -61,7 +77,36 @@ public class RegistrySimple<K, V> implements IRegistry<K, V> {
      * Does this registry contain an entry for the given key?
      */
     public boolean containsKey(K key) {
-        return this.registryObjects.containsKey(key);
+        PerfectHashTable table = this.frozenKeys;
+        return table != null ? table.indexOf(key) >= 0 : this.registryObjects.containsKey(key);
+    }
+
+    /**
+     * Makes this registry read only and switches key lookups to a perfect hash table built over the registered keys.
+     * Registries are filled once at startup and read constantly afterwards, so this should be called once loading is
+     * done, before the registry is handed to other threads. Lookups by object and ID already go through
+     * {@link io.nukkit.util.IntIdentityHashBiMap}, which needs no frozen form.
+     */
+    public void freeze() {
+        if (this.frozen) {
+            return;
+        }
+
+        this.frozen = true;
+        List<K> keys = new ArrayList<>(this.registryObjects.keySet());
+        PerfectHashTable table = PerfectHashTable.build(keys);
+        Object[] aobject = new Object[table.capacity()];
+
+        for (K k : keys) {
+            aobject[table.indexOf(k)] = this.registryObjects.get(k);
+        }
+
+        this.frozenValues = aobject;
+        this.frozenKeys = table;
+    }
+
+    public boolean isFrozen() {
+        return this.frozen;
     }
 
 